@@ -0,0 +1,106 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * The classes a benchmark runs over: either the closure of {@link Fangerprinter} itself, or the closure of one of
+ * the TestClassToHash fixtures, compiled from source when the benchmark starts.
+ */
+final class BenchmarkClasses {
+
+    static final String LIBRARY = "library";
+    private static final String FIXTURE_PREFIX = "fixture-";
+
+    private final Class rootClass;
+    private final ClassLoader loader;
+    private final Map<String, byte[]> classes;
+
+    private BenchmarkClasses(Class rootClass, ClassLoader loader, Map<String, byte[]> classes) {
+        this.rootClass = rootClass;
+        this.loader = loader;
+        this.classes = classes;
+    }
+
+    /**
+     * @param name "library" or "fixture-1" to "fixture-5"
+     */
+    static BenchmarkClasses load(String name) throws Exception {
+        if (LIBRARY.equals(name)) {
+            return load(Fangerprinter.class, null);
+        }
+        if (!name.startsWith(FIXTURE_PREFIX)) {
+            throw new IllegalArgumentException("Unknown benchmark classes " + name);
+        }
+        ClassLoader loader = compileFixture(name.substring(FIXTURE_PREFIX.length()));
+        return load(loader.loadClass("TestClassToHash"), loader);
+    }
+
+    Class getRootClass() {
+        return rootClass;
+    }
+
+    //the loader the root class needs, or null when it is on the classpath
+    ClassLoader getLoader() {
+        return loader;
+    }
+
+    //the bytes of every class reachable from the root, by internal name
+    Map<String, byte[]> getClasses() {
+        return classes;
+    }
+
+    Fangerprinter.FangerprintBuilder newBuilder() {
+        Fangerprinter.FangerprintBuilder builder = Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5());
+        return loader != null ? builder.withClassLoader(loader) : builder;
+    }
+
+    private static BenchmarkClasses load(Class rootClass, ClassLoader loader) throws IOException {
+        BenchmarkClasses benchmarkClasses = new BenchmarkClasses(rootClass, loader, Maps.newHashMap());
+        Fangerprinter fangerprinter = benchmarkClasses.newBuilder().build();
+        fangerprinter.computeHash();
+        for (String internalName : fangerprinter.getDependencies()) {
+            URL location = ClassLoader.getSystemResource(internalName + ".class");
+            if (location == null && loader != null) {
+                location = loader.getResource(internalName + ".class");
+            }
+            try (InputStream in = location.openStream()) {
+                benchmarkClasses.classes.put(internalName, ByteStreams.toByteArray(in));
+            }
+        }
+        return benchmarkClasses;
+    }
+
+    private static ClassLoader compileFixture(String fixture) throws IOException {
+        File directory = Files.createTempDirectory("fangerprint-fixture-" + fixture).toFile();
+        File source = new File(directory, "TestClassToHash.java");
+        String resource = "com/stacktrace/yo/fangerprint/" + fixture + "/TestClassToHash.java";
+        try (InputStream in = BenchmarkClasses.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("No fixture " + resource);
+            }
+            Files.copy(in, source.toPath());
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        int result = compiler.run(null, null, null,
+                "-d", directory.getPath(),
+                "-classpath", System.getProperty("java.class.path"),
+                source.getPath());
+        if (result != 0) {
+            throw new IllegalStateException("Unable to compile " + resource);
+        }
+        return new URLClassLoader(new URL[]{directory.toURI().toURL()}, BenchmarkClasses.class.getClassLoader());
+    }
+}
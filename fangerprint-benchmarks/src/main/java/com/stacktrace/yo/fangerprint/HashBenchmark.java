@@ -0,0 +1,82 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The final step of a hash: sorting what every class adds by class name and feeding it to the hasher, over class
+ * bytes as computeHash does by default and over class digests as it does with a streaming hash or a cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashBenchmark {
+
+    @Param({"library", "fixture-1"})
+    public String classes;
+
+    @Param({"md5", "sha256", "murmur3_128"})
+    public String hashType;
+
+    private HashFunction hashFunction;
+    private Map<String, byte[]> classBytes;
+    private Map<String, byte[]> classDigests;
+
+    @Setup
+    public void setUp() throws Exception {
+        hashFunction = hashFunction(hashType);
+        classBytes = BenchmarkClasses.load(classes).getClasses();
+        classDigests = Maps.newHashMap(Maps.transformValues(classBytes, bytes -> hashFunction.hashBytes(bytes).asBytes()));
+    }
+
+    @Benchmark
+    public String sortAndHashBytes() {
+        return sortAndHash(classBytes);
+    }
+
+    @Benchmark
+    public String sortAndHashDigests() {
+        return sortAndHash(classDigests);
+    }
+
+    private String sortAndHash(Map<String, byte[]> dependencies) {
+        Map<String, byte[]> sorted = Maps.newTreeMap();
+        sorted.putAll(dependencies);
+        Hasher hasher = hashFunction.newHasher();
+        sorted.values()
+                .forEach(hasher::putBytes);
+        return hasher.hash().toString();
+    }
+
+    private static HashFunction hashFunction(String hashType) {
+        switch (hashType) {
+            case "md5":
+                return Hashing.md5();
+            case "sha256":
+                return Hashing.sha256();
+            case "murmur3_128":
+                return Hashing.murmur3_128();
+            default:
+                throw new IllegalArgumentException("Unknown hash type " + hashType);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.net.URL;
+import java.security.CodeSource;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The parts of the decision whether to ignore a class, each over the same fixed, sorted set of names: every class
+ * reached from the benchmark classes, runtime classes included. The name rules are matched first, the jar of a class
+ * is only looked for when there are jar rules, either from its resource or by loading it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IgnoreDecisionBenchmark {
+
+    @Param({"library", "fixture-1"})
+    public String classes;
+
+    private List<String> names;
+    private ClassLoader loader;
+    //class patterns of the kind a build excludes, with and without wildcards
+    private final ExclusionMatcher classMatcher = ExclusionMatcher.compile(ImmutableList.of(
+            "com/google/**", "org/objectweb/asm/*Visitor", "org/slf4j/Logger", "**/*Test"));
+    private final ExclusionMatcher jarMatcher = ExclusionMatcher.compile(ImmutableList.of(
+            "guava-*.jar", "slf4j-api-*.jar", "rt.jar"));
+    private ClassSource classSource;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkClasses benchmarkClasses = BenchmarkClasses.load(classes);
+        names = ImmutableList.sortedCopyOf(benchmarkClasses.getClasses().keySet());
+        loader = benchmarkClasses.getLoader() != null
+                ? benchmarkClasses.getLoader()
+                : Fangerprinter.class.getClassLoader();
+    }
+
+    //a source per iteration, as a traversal has, so the jars it stamps are not carried over
+    @Setup(Level.Iteration)
+    public void openSource() {
+        classSource = new LoaderClassSource(loader, ImmutableList.of());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeSource() throws Exception {
+        classSource.close();
+    }
+
+    @Benchmark
+    public void matchClassPatterns(Blackhole blackhole) {
+        names.forEach(name -> blackhole.consume(classMatcher.matches(name)));
+    }
+
+    @Benchmark
+    public void matchBootstrapPackages(Blackhole blackhole) {
+        names.forEach(name -> blackhole.consume(ExclusionMatcher.BOOTSTRAP.matches(name)));
+    }
+
+    //the jar of every class from its resource, as with resolveFromResources
+    @Benchmark
+    public void matchJarFromResource(Blackhole blackhole) throws Exception {
+        for (String name : names) {
+            ClassFile classFile = classSource.find(name);
+            String codeSource = classFile != null ? classFile.getCodeSource() : null;
+            blackhole.consume(codeSource != null && jarMatcher.matches(new File(codeSource).getName()));
+        }
+    }
+
+    //the jar of every class from its protection domain, loading the classes that are not loaded yet
+    @Benchmark
+    public void matchJarFromLoadedClass(Blackhole blackhole) {
+        for (String name : names) {
+            URL location = null;
+            try {
+                CodeSource codeSource = loader.loadClass(name.replace('/', '.')).getProtectionDomain().getCodeSource();
+                location = codeSource != null ? codeSource.getLocation() : null;
+            } catch (ClassNotFoundException | LinkageError e) {
+                blackhole.consume(e);
+            }
+            blackhole.consume(location != null && jarMatcher.matches(new File(location.getPath()).getName()));
+        }
+    }
+}
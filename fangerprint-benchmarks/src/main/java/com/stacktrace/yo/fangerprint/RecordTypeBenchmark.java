@@ -0,0 +1,98 @@
+package com.stacktrace.yo.fangerprint;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning the descriptors a visit reports into class names, split into parsing the descriptors into types and
+ * breaking the types down with {@link Fangerprinter#recordType}, against breaking the descriptors down directly with
+ * {@link Fangerprinter#recordDescriptor} the way the visitors do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecordTypeBenchmark {
+
+    @Param({"library", "fixture-1", "fixture-2", "fixture-3", "fixture-4", "fixture-5"})
+    public String classes;
+
+    //every field and method descriptor of the declarations and instructions in visiting order, duplicates included
+    private List<String> descriptors;
+    private List<Type> types;
+
+    @Setup
+    public void setUp() throws Exception {
+        descriptors = new ArrayList<>();
+        MethodVisitor instructions = new MethodVisitor(Opcodes.ASM5) {
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+                descriptors.add(desc);
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                descriptors.add(desc);
+            }
+        };
+        BenchmarkClasses.load(classes).getClasses().values().forEach(bytes ->
+                new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM5) {
+                    @Override
+                    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+                        descriptors.add(desc);
+                        return null;
+                    }
+
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                                                     String[] exceptions) {
+                        descriptors.add(desc);
+                        return instructions;
+                    }
+                }, 0));
+        types = new ArrayList<>();
+        descriptors.forEach(descriptor -> types.add(Type.getType(descriptor)));
+    }
+
+    @Benchmark
+    public void parseDescriptors(Blackhole blackhole) {
+        descriptors.forEach(descriptor -> blackhole.consume(Type.getType(descriptor)));
+    }
+
+    @Benchmark
+    public void recordTypes(Blackhole blackhole) {
+        types.forEach(type -> Fangerprinter.recordType(type, blackhole::consume));
+    }
+
+    @Benchmark
+    public void parseAndRecordDescriptors(Blackhole blackhole) {
+        descriptors.forEach(descriptor -> Fangerprinter.recordType(Type.getType(descriptor), blackhole::consume));
+    }
+
+    @Benchmark
+    public void recordDescriptors(Blackhole blackhole) {
+        descriptors.forEach(descriptor -> Fangerprinter.recordDescriptor(descriptor, blackhole::consume));
+    }
+}
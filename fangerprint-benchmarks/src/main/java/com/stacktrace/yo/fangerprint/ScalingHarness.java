@@ -0,0 +1,159 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures how computeHash scales over generated classpaths, for every combination of the given settings:
+ * <pre>
+ * java -cp target/benchmarks.jar com.stacktrace.yo.fangerprint.ScalingHarness classes=1000,10000,200000 jars=0,16
+ * </pre>
+ * Settings, each a comma separated list: classes, fanOut, packages (classes / 200 when not given), jars (0 for a
+ * class directory), excludedJars (how many of the last jars are ignored by name), runs and warmups.
+ * <p>
+ * Every run uses a new fangerprinter on the calling thread, so the allocation counted is the whole traversal.
+ * Peak heap is the sum of the peaks of the heap pools during a run.
+ */
+public final class ScalingHarness {
+
+    private static final long MB = 1024 * 1024;
+
+    private ScalingHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, List<Integer>> settings = Maps.newHashMap();
+        settings.put("classes", Lists.newArrayList(1000, 10000, 50000, 200000));
+        settings.put("fanOut", Lists.newArrayList(8));
+        settings.put("packages", Lists.newArrayList(0));
+        settings.put("jars", Lists.newArrayList(0, 1, 16));
+        settings.put("excludedJars", Lists.newArrayList(0));
+        settings.put("runs", Lists.newArrayList(5));
+        settings.put("warmups", Lists.newArrayList(2));
+        for (String arg : args) {
+            List<String> setting = Splitter.on('=').limit(2).splitToList(arg);
+            if (setting.size() != 2 || !settings.containsKey(setting.get(0))) {
+                throw new IllegalArgumentException("Unknown setting " + arg + ", expected one of " + settings.keySet());
+            }
+            settings.put(setting.get(0), Splitter.on(',').trimResults().splitToList(setting.get(1)).stream()
+                    .map(Integer::valueOf)
+                    .collect(Collectors.toList()));
+        }
+
+        System.out.printf("%8s %6s %8s %5s %8s %8s %10s %12s %10s %12s%n",
+                "classes", "fanOut", "packages", "jars", "excluded", "reached", "ms/op", "classes/s", "peak MB", "alloc MB/s");
+        int runs = settings.get("runs").get(0);
+        int warmups = settings.get("warmups").get(0);
+        for (int classes : settings.get("classes")) {
+            for (int fanOut : settings.get("fanOut")) {
+                for (int packages : settings.get("packages")) {
+                    for (int jars : settings.get("jars")) {
+                        for (int excludedJars : settings.get("excludedJars")) {
+                            //the jar of the root class is never excluded
+                            if (excludedJars > 0 && excludedJars >= jars) {
+                                continue;
+                            }
+                            int packageCount = packages > 0 ? packages : Math.max(1, classes / 200);
+                            run(new SyntheticClasspath(classes, fanOut, packageCount, jars),
+                                    classes, fanOut, packageCount, jars, excludedJars, runs, warmups);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void run(SyntheticClasspath classpath, int classes, int fanOut, int packages, int jars,
+                            int excludedJars, int runs, int warmups) throws Exception {
+        Path directory = Files.createTempDirectory("fangerprint-scaling");
+        try {
+            List<URL> urls = classpath.write(directory.toFile());
+            try (URLClassLoader loader = new URLClassLoader(urls.toArray(new URL[0]), null)) {
+                Class rootClass = loader.loadClass(SyntheticClasspath.ROOT_CLASS.replace('/', '.'));
+                for (int i = 0; i < warmups; i++) {
+                    newFangerprinter(rootClass, loader, jars, excludedJars).computeHash();
+                }
+                long nanos = 0;
+                long allocated = 0;
+                long peak = 0;
+                int reached = 0;
+                for (int i = 0; i < runs; i++) {
+                    Fangerprinter fangerprinter = newFangerprinter(rootClass, loader, jars, excludedJars);
+                    System.gc();
+                    resetPeaks();
+                    long allocatedBefore = allocatedBytes();
+                    long start = System.nanoTime();
+                    fangerprinter.computeHash();
+                    nanos += System.nanoTime() - start;
+                    allocated += allocatedBytes() - allocatedBefore;
+                    peak = Math.max(peak, peakHeap());
+                    reached = fangerprinter.getDependencies().size();
+                }
+                double seconds = nanos / 1e9;
+                System.out.printf("%8d %6d %8d %5d %8d %8d %10.1f %12.0f %10d %12.1f%n",
+                        classes, fanOut, packages, jars, excludedJars, reached,
+                        seconds * 1000 / runs, reached * runs / seconds, peak / MB, allocated / MB / seconds);
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    private static Fangerprinter newFangerprinter(Class rootClass, ClassLoader loader, int jars, int excludedJars) {
+        Fangerprinter.FangerprintBuilder builder = Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .ignoreJava(true)
+                //the generated classes can only be found as resources of their loader
+                .resolveCodeSourceFromResource(true);
+        for (int jar = jars - excludedJars; jar < jars; jar++) {
+            builder.ignoreJarWithName(SyntheticClasspath.jarName(jar));
+        }
+        return builder.build();
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .collect(Collectors.toList());
+    }
+
+    private static void resetPeaks() {
+        heapPools().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    private static long peakHeap() {
+        return heapPools().stream()
+                .mapToLong(pool -> pool.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.delete(path);
+            }
+        }
+    }
+}
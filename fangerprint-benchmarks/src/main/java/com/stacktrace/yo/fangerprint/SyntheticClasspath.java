@@ -0,0 +1,146 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Generates a classpath of classes that all reach each other from a root class.
+ * <p>
+ * Class i references classes i * fanOut + 1 to i * fanOut + fanOut, so the closure is a tree fanOut wide and about
+ * log(classes) / log(fanOut) deep, plus one reference back across the tree so that classes are reached more than
+ * once. Classes are spread over packages round robin, and packages over jars, or all written to one class
+ * directory when there are no jars.
+ */
+final class SyntheticClasspath {
+
+    static final String ROOT_CLASS = "synthetic/p0/C0";
+    private static final String OBJECT = "java/lang/Object";
+
+    private final int classes;
+    private final int fanOut;
+    private final int packages;
+    private final int jars;
+
+    /**
+     * @param jars the number of jars, or 0 for a class directory
+     */
+    SyntheticClasspath(int classes, int fanOut, int packages, int jars) {
+        Preconditions.checkArgument(classes > 1, "classes must be more than one: %s", classes);
+        Preconditions.checkArgument(fanOut > 0, "fanOut must be positive: %s", fanOut);
+        Preconditions.checkArgument(packages > 0, "packages must be positive: %s", packages);
+        Preconditions.checkArgument(jars >= 0, "jars must not be negative: %s", jars);
+        this.classes = classes;
+        this.fanOut = fanOut;
+        this.packages = packages;
+        this.jars = jars;
+    }
+
+    static String jarName(int jar) {
+        return "synthetic-" + jar + ".jar";
+    }
+
+    /**
+     * @return the classpath entries written under the directory
+     */
+    List<URL> write(File directory) throws IOException {
+        List<URL> classpath = Lists.newArrayList();
+        if (jars == 0) {
+            File classDirectory = new File(directory, "classes");
+            for (int i = 0; i < classes; i++) {
+                File classFile = new File(classDirectory, className(i) + ".class");
+                Files.createDirectories(classFile.getParentFile().toPath());
+                Files.write(classFile.toPath(), generate(i));
+            }
+            classpath.add(classDirectory.toURI().toURL());
+            return classpath;
+        }
+        List<JarOutputStream> outputs = Lists.newArrayList();
+        try {
+            for (int jar = 0; jar < jars; jar++) {
+                File jarFile = new File(directory, jarName(jar));
+                outputs.add(new JarOutputStream(new FileOutputStream(jarFile)));
+                classpath.add(jarFile.toURI().toURL());
+            }
+            for (int i = 0; i < classes; i++) {
+                JarOutputStream out = outputs.get(packageOf(i) % jars);
+                out.putNextEntry(new ZipEntry(className(i) + ".class"));
+                out.write(generate(i));
+                out.closeEntry();
+            }
+        } finally {
+            for (JarOutputStream out : outputs) {
+                out.close();
+            }
+        }
+        return classpath;
+    }
+
+    private int packageOf(int index) {
+        return index % packages;
+    }
+
+    private String className(int index) {
+        return "synthetic/p" + packageOf(index) + "/C" + index;
+    }
+
+    //the classes the class references, its children in the tree and one class across it
+    private List<Integer> referencesOf(int index) {
+        List<Integer> references = Lists.newArrayList();
+        for (int k = 1; k <= fanOut; k++) {
+            long child = (long) index * fanOut + k;
+            if (child < classes) {
+                references.add((int) child);
+            }
+        }
+        int across = (int) (((long) index * 31 + 17) % classes);
+        if (across != index) {
+            references.add(across);
+        }
+        return references;
+    }
+
+    //a field for every reference and a method returning the first one, so both scanners have work to do
+    private byte[] generate(int index) {
+        String name = className(index);
+        List<Integer> references = referencesOf(index);
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, OBJECT, null);
+        for (int k = 0; k < references.size(); k++) {
+            writer.visitField(Opcodes.ACC_PUBLIC, "f" + k, "L" + className(references.get(k)) + ";", null, null)
+                    .visitEnd();
+        }
+
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        if (!references.isEmpty()) {
+            String descriptor = "L" + className(references.get(0)) + ";";
+            MethodVisitor next = writer.visitMethod(Opcodes.ACC_PUBLIC, "next", "()" + descriptor, null, null);
+            next.visitCode();
+            next.visitVarInsn(Opcodes.ALOAD, 0);
+            next.visitFieldInsn(Opcodes.GETFIELD, name, "f0", descriptor);
+            next.visitInsn(Opcodes.ARETURN);
+            next.visitMaxs(0, 0);
+            next.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,69 @@
+package com.stacktrace.yo.fangerprint;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole computeHash, including the shouldIgnoreClass decision for every class reached. A fangerprinter is built
+ * for every call, as ignore decisions are kept for the life of one.
+ * <p>
+ * A jar rule that matches no jar is always set, as without jar rules the code source of a class is never looked up
+ * and resolveFromResources would measure nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TraversalBenchmark {
+
+    @Param({"library", "fixture-1"})
+    public String classes;
+
+    @Param({"false", "true"})
+    public boolean ignoreJava;
+
+    @Param({"false", "true"})
+    public boolean resolveFromResources;
+
+    private BenchmarkClasses benchmarkClasses;
+
+    @Setup
+    public void setUp() throws Exception {
+        benchmarkClasses = BenchmarkClasses.load(classes);
+    }
+
+    @Benchmark
+    public String computeHash() {
+        return newBuilder()
+                .build()
+                .computeHash();
+    }
+
+    @Benchmark
+    public String computeHashWithConstantPoolScanner() {
+        return newBuilder()
+                .useConstantPoolScanner(true)
+                .build()
+                .computeHash();
+    }
+
+    private Fangerprinter.FangerprintBuilder newBuilder() {
+        return benchmarkClasses.newBuilder()
+                .ignoreJava(ignoreJava)
+                .resolveCodeSourceFromResource(resolveFromResources)
+                .ignoreJarWithName("not-on-the-classpath.jar");
+    }
+}
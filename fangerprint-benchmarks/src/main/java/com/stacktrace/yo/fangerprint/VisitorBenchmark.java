@@ -0,0 +1,58 @@
+package com.stacktrace.yo.fangerprint;
+
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Reading the references of every class of a closure, once parsed, with each way of finding them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VisitorBenchmark {
+
+    @Param({"library", "fixture-1", "fixture-2", "fixture-3", "fixture-4", "fixture-5"})
+    public String classes;
+
+    private List<ClassReader> readers;
+
+    @Setup
+    public void setUp() throws Exception {
+        readers = BenchmarkClasses.load(classes).getClasses().values().stream()
+                .map(ClassReader::new)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        readers.forEach(reader -> blackhole.consume(new ClassReader(reader.b)));
+    }
+
+    @Benchmark
+    public void dependencyVisitor(Blackhole blackhole) {
+        readers.forEach(reader -> reader.accept(new DependencyVisitor(blackhole::consume), 0));
+    }
+
+    @Benchmark
+    public void constantPoolScanner(Blackhole blackhole) {
+        readers.forEach(reader -> new ConstantPoolScanner(blackhole::consume).scan(reader));
+    }
+}
@@ -0,0 +1,171 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashFunction;
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * The digest and outgoing references of every class of an artifact, written into it when it is built so that its
+ * classes do not have to be read or visited at runtime.
+ * <p>
+ * The index is {@value #LOCATION} inside the jar. An entry is used while the jar entry of its class has the crc and
+ * size it was recorded with, and only by fangerprinters with the hash function and scan mode it was written for.
+ */
+final class ArtifactIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactIndex.class);
+
+    static final String LOCATION = "META-INF/fangerprint.idx";
+    static final ArtifactIndex NONE = new ArtifactIndex(ImmutableMap.of());
+
+    private static final int MAGIC = 0xFA46E2D0;
+    private static final int VERSION = 1;
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final Map<String, Entry> entries;
+
+    private ArtifactIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    Entry get(String internalName) {
+        return entries.get(internalName);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Indexes every class under the directory, as the classes of the jar it is about to be packaged into.
+     *
+     * @return the number of classes indexed
+     */
+    static int write(File classesDirectory, HashFunction hashFunction, boolean scanConstantPool, boolean stripDebug,
+                     boolean apiOnly) throws IOException {
+        Path root = classesDirectory.toPath();
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(root)) {
+            classFiles = paths
+                    .filter(path -> path.toString().endsWith(CLASS_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        File file = new File(classesDirectory, LOCATION);
+        Files.createDirectories(file.getParentFile().toPath());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(Fangerprinter.namespaceOf(hashFunction, scanConstantPool, stripDebug, apiOnly));
+            out.writeInt(classFiles.size());
+            for (Path classFile : classFiles) {
+                String name = root.relativize(classFile).toString().replace(File.separatorChar, '/');
+                byte[] bytes = Files.readAllBytes(classFile);
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                ClassReader reader = new ClassReader(bytes);
+                if (apiOnly) {
+                    reader = new ClassReader(DebugStripper.stripToApi(reader));
+                } else if (stripDebug) {
+                    reader = new ClassReader(DebugStripper.strip(reader));
+                }
+                byte[] digest = hashFunction.hashBytes(reader.b).asBytes();
+                Collection<String> references = Fangerprinter.referencesOf(reader, scanConstantPool);
+
+                out.writeUTF(name.substring(0, name.length() - CLASS_SUFFIX.length()));
+                out.writeLong(crc.getValue());
+                out.writeLong(bytes.length);
+                out.writeShort(digest.length);
+                out.write(digest);
+                out.writeInt(references.size());
+                for (String reference : references) {
+                    out.writeUTF(reference);
+                }
+            }
+        }
+        return classFiles.size();
+    }
+
+    /**
+     * @return the entries of the index of the jar that still match its classes, or {@link #NONE}
+     */
+    static ArtifactIndex read(File jar, String namespace) {
+        try (JarFile jarFile = new JarFile(jar)) {
+            ZipEntry indexEntry = jarFile.getEntry(LOCATION);
+            if (indexEntry == null) {
+                return NONE;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(jarFile.getInputStream(indexEntry)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(namespace)) {
+                    LOGGER.debug("Ignoring the index of {}, it was written for other settings", jar);
+                    return NONE;
+                }
+                Map<String, Entry> entries = Maps.newHashMap();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String name = in.readUTF();
+                    long crc = in.readLong();
+                    long size = in.readLong();
+                    byte[] digest = new byte[in.readUnsignedShort()];
+                    in.readFully(digest);
+                    ImmutableList.Builder<String> references = ImmutableList.builder();
+                    int referenceCount = in.readInt();
+                    for (int j = 0; j < referenceCount; j++) {
+                        references.add(in.readUTF());
+                    }
+                    //the jar may have been changed after the index was written
+                    ZipEntry classEntry = jarFile.getEntry(name + CLASS_SUFFIX);
+                    if (classEntry != null && classEntry.getCrc() == crc && classEntry.getSize() == size) {
+                        entries.put(name, new Entry(digest, references.build()));
+                    }
+                }
+                LOGGER.debug("Using {} of {} indexed classes of {}", entries.size(), count, jar);
+                return new ArtifactIndex(entries);
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Ignoring unreadable index of {}", jar, e);
+            return NONE;
+        }
+    }
+
+    static final class Entry {
+
+        private final byte[] digest;
+        private final List<String> references;
+
+        private Entry(byte[] digest, List<String> references) {
+            this.digest = digest;
+            this.references = references;
+        }
+
+        byte[] getDigest() {
+            return digest;
+        }
+
+        List<String> getReferences() {
+            return references;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the digest and outgoing references of every class that has been visited, so that unchanged classes do
+ * not have to be read or visited again, even after a restart.
+ * <p>
+ * There is one file per code source (jar or class directory). An entry is valid while the {@link ClassFile#getStamp()}
+ * of the class is the one it was recorded with. Entries no run has used for {@link #MAX_UNUSED_DAYS} days, such as
+ * those of removed or renamed classes, are dropped, so fingerprinters of other roots can share the directory.
+ */
+final class ClassDigestCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassDigestCache.class);
+
+    private static final int MAGIC = 0xFA46E2C0;
+    private static final int VERSION = 3;
+    private static final String SUFFIX = ".fpc";
+    static final int MAX_UNUSED_DAYS = 30;
+    private static final long MAX_UNUSED = TimeUnit.DAYS.toMillis(MAX_UNUSED_DAYS);
+    //how stale the last use of an entry may get before a hit rewrites its file, at most once a day
+    private static final long REFRESH = TimeUnit.DAYS.toMillis(1);
+
+    private final File directory;
+    private final String namespace;
+    private final long now;
+    private final Map<String, Source> sources = Maps.newConcurrentMap();
+
+    /**
+     * @param namespace everything that changes what an entry holds, such as the hash function and scan mode
+     * @param now       the time of the run in milliseconds, what it uses counts as used then
+     */
+    ClassDigestCache(File directory, String namespace, long now) {
+        this.directory = directory;
+        this.namespace = namespace;
+        this.now = now;
+    }
+
+    Entry get(ClassFile classFile) {
+        String codeSource = classFile.getCodeSource();
+        long[] stamp = classFile.getStamp();
+        if (codeSource == null || stamp == null) {
+            return null;
+        }
+        Source source = source(codeSource);
+        Entry entry = source.entries.get(classFile.getInternalName());
+        if (entry == null || !Arrays.equals(entry.stamp, stamp)) {
+            return null;
+        }
+        if (entry.lastUsed < now - REFRESH) {
+            entry.lastUsed = now;
+            source.dirty = true;
+        }
+        return entry;
+    }
+
+    void put(ClassFile classFile, byte[] digest, Collection<String> references) {
+        String codeSource = classFile.getCodeSource();
+        long[] stamp = classFile.getStamp();
+        if (codeSource != null && stamp != null) {
+            Source source = source(codeSource);
+            source.entries.put(classFile.getInternalName(), new Entry(stamp, digest, ImmutableList.copyOf(references), now));
+            source.dirty = true;
+        }
+    }
+
+    //drops the expired entries of the code sources the run used and writes every one that changed, a failure only
+    //costs a re-visit next time
+    void save() {
+        sources.values().forEach(source -> {
+            if (source.entries.values().removeIf(entry -> entry.lastUsed < now - MAX_UNUSED)) {
+                source.dirty = true;
+            }
+        });
+        sources.values().stream()
+                .filter(source -> source.dirty)
+                .forEach(source -> {
+                    try {
+                        write(source);
+                        source.dirty = false;
+                    } catch (IOException e) {
+                        LOGGER.warn("Unable to write fingerprint cache for {}", source.path, e);
+                    }
+                });
+    }
+
+    private Source source(String codeSource) {
+        return sources.computeIfAbsent(codeSource, path -> read(new Source(path)));
+    }
+
+    private File fileOf(Source source) {
+        String name = Hashing.murmur3_128()
+                .hashString(namespace + '\n' + source.path, StandardCharsets.UTF_8)
+                .toString();
+        return new File(directory, name + SUFFIX);
+    }
+
+    private Source read(Source source) {
+        File file = fileOf(source);
+        if (!file.isFile()) {
+            return source;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(source.path)) {
+                return source;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                long[] stamp = new long[in.readUnsignedByte()];
+                for (int j = 0; j < stamp.length; j++) {
+                    stamp[j] = in.readLong();
+                }
+                long lastUsed = in.readLong();
+                byte[] digest = new byte[in.readUnsignedShort()];
+                in.readFully(digest);
+                ImmutableList.Builder<String> references = ImmutableList.builder();
+                int referenceCount = in.readInt();
+                for (int j = 0; j < referenceCount; j++) {
+                    references.add(in.readUTF());
+                }
+                source.entries.put(name, new Entry(stamp, digest, references.build(), lastUsed));
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Ignoring unreadable fingerprint cache {}", file, e);
+            source.entries.clear();
+        }
+        return source;
+    }
+
+    private void write(Source source) throws IOException {
+        Files.createDirectories(directory.toPath());
+        File file = fileOf(source);
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                Map<String, Entry> entries = Maps.newTreeMap();
+                entries.putAll(source.entries);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(source.path);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeByte(entry.getValue().stamp.length);
+                    for (long value : entry.getValue().stamp) {
+                        out.writeLong(value);
+                    }
+                    out.writeLong(entry.getValue().lastUsed);
+                    out.writeShort(entry.getValue().digest.length);
+                    out.write(entry.getValue().digest);
+                    out.writeInt(entry.getValue().references.size());
+                    for (String reference : entry.getValue().references) {
+                        out.writeUTF(reference);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    static final class Entry {
+
+        private final long[] stamp;
+        private final byte[] digest;
+        private final List<String> references;
+        //the time of the last run that used the entry
+        private volatile long lastUsed;
+
+        private Entry(long[] stamp, byte[] digest, List<String> references, long lastUsed) {
+            this.stamp = stamp;
+            this.digest = digest;
+            this.references = references;
+            this.lastUsed = lastUsed;
+        }
+
+        byte[] getDigest() {
+            return digest;
+        }
+
+        List<String> getReferences() {
+            return references;
+        }
+    }
+
+    private static final class Source {
+
+        private final String path;
+        private final Map<String, Entry> entries = Maps.newConcurrentMap();
+        private volatile boolean dirty = false;
+
+        private Source(String path) {
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Watches the directories that classes were read from, so that the classes that changed since the last poll can be
+ * told without reading any of them. Classes that live in jars are not watched.
+ */
+final class ClassDirectoryWatcher implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassDirectoryWatcher.class);
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final WatchService watchService;
+    //the class directory every watched package directory belongs to
+    private final Map<Path, Path> watchedDirectories = Maps.newConcurrentMap();
+
+    ClassDirectoryWatcher() throws IOException {
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    //watches the package directory of the class when it was read from a class directory
+    void watch(ClassFile classFile) {
+        String codeSource = classFile.getCodeSource();
+        if (codeSource == null || !"file".equals(classFile.getLocation().getProtocol())) {
+            return;
+        }
+        Path root = Paths.get(codeSource);
+        if (!root.toFile().isDirectory()) {
+            return;
+        }
+        Path directory = root.resolve(classFile.getInternalName()).getParent();
+        if (directory == null || watchedDirectories.containsKey(directory)) {
+            return;
+        }
+        try {
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchedDirectories.put(directory, root);
+        } catch (IOException e) {
+            LOGGER.trace("Unable to watch {}", directory, e);
+        }
+    }
+
+    /**
+     * @return the internal names of the classes that were created, changed or deleted since the last poll, or null
+     * when events were lost and every class has to be considered changed
+     */
+    Set<String> pollChanges() {
+        Set<String> changed = Sets.newHashSet();
+        boolean overflowed = false;
+        WatchKey key;
+        //every key is drained and reset even after an overflow, a key that is not reset is never signalled again
+        while ((key = watchService.poll()) != null) {
+            Path directory = (Path) key.watchable();
+            Path root = watchedDirectories.get(directory);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflowed = true;
+                    continue;
+                }
+                String name = event.context().toString();
+                if (root != null && name.endsWith(CLASS_SUFFIX)) {
+                    String path = root.relativize(directory.resolve(name)).toString();
+                    changed.add(path.substring(0, path.length() - CLASS_SUFFIX.length())
+                            .replace(File.separatorChar, '/'));
+                }
+            }
+            if (!key.reset()) {
+                //the directory is gone, it is registered again if one of its classes comes back
+                watchedDirectories.remove(directory);
+            }
+        }
+        return overflowed ? null : changed;
+    }
+
+    @Override
+    public void close() {
+        watchedDirectories.clear();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOGGER.trace("Unable to close watch service", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.stacktrace.yo.fangerprint;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * A class found by a {@link ClassSource}, which can tell whether it changed without being read.
+ */
+abstract class ClassFile {
+
+    private final String internalName;
+    private final URL location;
+
+    ClassFile(String internalName, URL location) {
+        this.internalName = internalName;
+        this.location = location;
+    }
+
+    String getInternalName() {
+        return internalName;
+    }
+
+    URL getLocation() {
+        return location;
+    }
+
+    /**
+     * @return the path of the jar or class directory holding the class, or null when it is not known
+     */
+    abstract String getCodeSource();
+
+    /**
+     * @return values that change whenever the class may have changed, or null when they are not known
+     */
+    abstract long[] getStamp();
+
+    abstract byte[] read() throws IOException;
+}
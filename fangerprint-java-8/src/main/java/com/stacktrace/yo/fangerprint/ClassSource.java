@@ -0,0 +1,17 @@
+package com.stacktrace.yo.fangerprint;
+
+import java.io.Closeable;
+
+/**
+ * Finds the class files a traversal reads. A source lives for one traversal and is closed at its end.
+ */
+interface ClassSource extends Closeable {
+
+    /**
+     * @return the class file for the internal name, or null when there is none
+     */
+    ClassFile find(String internalName);
+
+    @Override
+    void close();
+}
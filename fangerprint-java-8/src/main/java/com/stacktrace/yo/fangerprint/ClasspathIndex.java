@@ -0,0 +1,232 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+/**
+ * Every class of the jars and class directories of a set of class loaders, listed once so that finding a class is
+ * a single map lookup.
+ * <p>
+ * Classes are found in the order {@link LoaderClassSource} finds them: the loaders that come first win, each asking
+ * its parents before itself, and of the loaders that come last the last one that knows the class wins. Only
+ * {@link URLClassLoader}s with file urls, and the boot class path where the runtime gives one, can be listed,
+ * a class the other loaders may hold is not known to the index.
+ * <p>
+ * Jars are assumed not to change. Class directories may: a class found in one is checked to still be there, and the
+ * directories are probed for a class the index does not know, so an index can be kept for the life of a fangerprinter.
+ */
+final class ClasspathIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClasspathIndex.class);
+    private static final String CLASS_SUFFIX = ".class";
+
+    //the jar or class directory url of every code source, by position
+    private final List<String> roots = Lists.newArrayList();
+    private final List<Boolean> archives = Lists.newArrayList();
+    //the class directories, in the order they are asked
+    private final List<File> directories = Lists.newArrayList();
+    //internal name to the position of its code source
+    private final Map<String, Integer> classes = Maps.newHashMap();
+    private final Set<String> visitedRoots = Sets.newHashSet();
+    private boolean complete = true;
+
+    private ClasspathIndex() {
+    }
+
+    /**
+     * @param firstWins loaders where the first one that knows a class wins
+     * @param lastWins  loaders asked after those, where the last one that knows a class wins
+     */
+    static ClasspathIndex build(List<ClassLoader> firstWins, List<ClassLoader> lastWins) {
+        ClasspathIndex index = new ClasspathIndex();
+        firstWins.forEach(index::addChain);
+        Lists.reverse(lastWins).forEach(index::addChain);
+        LOGGER.debug("Indexed {} classes in {} code sources, complete: {}",
+                index.classes.size(), index.roots.size(), index.complete);
+        return index;
+    }
+
+    /**
+     * @return the location of the class, or null when it is in none of the listed code sources
+     */
+    URL find(String internalName) {
+        Integer root = classes.get(internalName);
+        if (root != null && archives.get(root)) {
+            return toUrl("jar:" + roots.get(root) + "!/" + internalName + CLASS_SUFFIX);
+        }
+        if (root != null && isClassIn(new File(URI.create(roots.get(root))), internalName)) {
+            return toUrl(roots.get(root) + internalName + CLASS_SUFFIX);
+        }
+        //removed from its directory since, or added to one
+        for (File directory : directories) {
+            if (isClassIn(directory, internalName)) {
+                return toUrl(directory.toURI() + internalName + CLASS_SUFFIX);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isClassIn(File directory, String internalName) {
+        return new File(directory, internalName + CLASS_SUFFIX).isFile();
+    }
+
+    private static URL toUrl(String location) {
+        try {
+            return new URL(location);
+        } catch (MalformedURLException e) {
+            LOGGER.trace("Cannot make a url of {}", location, e);
+            return null;
+        }
+    }
+
+    /**
+     * @return whether every loader could be listed, so a class the index does not know is in none of them
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    int size() {
+        return classes.size();
+    }
+
+    //a loader asks its parents first, the boot class path is the parent of them all
+    private void addChain(ClassLoader loader) {
+        List<ClassLoader> chain = Lists.newArrayList();
+        for (ClassLoader current = loader; current != null; current = current.getParent()) {
+            chain.add(current);
+        }
+        addBootClassPath();
+        for (ClassLoader current : Lists.reverse(chain)) {
+            if (current instanceof URLClassLoader) {
+                for (URL url : ((URLClassLoader) current).getURLs()) {
+                    addRoot(url);
+                }
+            } else {
+                LOGGER.trace("Cannot list the classes of {}", current);
+                complete = false;
+            }
+        }
+    }
+
+    private void addBootClassPath() {
+        String bootClassPath = System.getProperty("sun.boot.class.path");
+        if (bootClassPath == null) {
+            complete = false;
+            return;
+        }
+        for (String path : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(bootClassPath)) {
+            File file = new File(path);
+            if (file.exists()) {
+                addFile(file);
+            }
+        }
+    }
+
+    private void addRoot(URL url) {
+        if (!"file".equals(url.getProtocol())) {
+            LOGGER.trace("Cannot list the classes of {}", url);
+            complete = false;
+            return;
+        }
+        try {
+            File file = new File(url.toURI());
+            if (file.exists()) {
+                addFile(file);
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            LOGGER.trace("Cannot list the classes of {}", url, e);
+            complete = false;
+        }
+    }
+
+    private void addFile(File file) {
+        String root = file.toURI().toString();
+        if (!visitedRoots.add(root)) {
+            return;
+        }
+        try {
+            if (file.isDirectory()) {
+                directories.add(file);
+                addDirectory(file.toPath(), register(root, false));
+            } else {
+                addJar(file, register(root, true));
+            }
+        } catch (IOException e) {
+            LOGGER.trace("Cannot list the classes of {}", file, e);
+            complete = false;
+        }
+    }
+
+    private int register(String root, boolean archive) {
+        roots.add(root);
+        archives.add(archive);
+        return roots.size() - 1;
+    }
+
+    private void addDirectory(Path directory, int root) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.forEach(path -> {
+                String name = directory.relativize(path).toString().replace(File.separatorChar, '/');
+                if (name.endsWith(CLASS_SUFFIX)) {
+                    classes.putIfAbsent(name.substring(0, name.length() - CLASS_SUFFIX.length()), root);
+                }
+            });
+        }
+    }
+
+    //a jar adds the jars its manifest puts on the class path after itself
+    private void addJar(File file, int root) throws IOException {
+        List<File> classPath = Lists.newArrayList();
+        try (JarFile jar = new JarFile(file)) {
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                String name = entries.nextElement().getName();
+                if (name.endsWith(CLASS_SUFFIX) && !name.startsWith("META-INF/")) {
+                    classes.putIfAbsent(name.substring(0, name.length() - CLASS_SUFFIX.length()), root);
+                }
+            }
+            Manifest manifest = jar.getManifest();
+            String manifestClassPath = manifest != null
+                    ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH)
+                    : null;
+            if (manifestClassPath != null) {
+                for (String entry : Splitter.on(' ').omitEmptyStrings().split(manifestClassPath)) {
+                    URL url = new URL(file.toURI().toURL(), entry);
+                    if ("file".equals(url.getProtocol())) {
+                        classPath.add(new File(url.toURI()));
+                    }
+                }
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            LOGGER.trace("Cannot follow the class path of {}", file, e);
+            complete = false;
+        }
+        classPath.stream()
+                .filter(File::exists)
+                .forEach(this::addFile);
+    }
+}
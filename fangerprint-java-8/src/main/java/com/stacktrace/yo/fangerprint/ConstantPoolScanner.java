@@ -0,0 +1,172 @@
+package com.stacktrace.yo.fangerprint;
+
+import org.objectweb.asm.ClassReader;
+
+import java.util.function.Consumer;
+
+/**
+ * Finds the types referenced by a class by reading its constant pool only.
+ * <p>
+ * Every type the {@link org.objectweb.asm.ClassVisitor} walk reports is either a CONSTANT_Class entry or a
+ * descriptor stored as a CONSTANT_Utf8 entry (field and method declarations, NameAndType, MethodType,
+ * annotations and local variables), so method bodies, frames and attributes never have to be decoded. Descriptors
+ * are checked and broken down where they were decoded, only the class names they hold become strings.
+ */
+final class ConstantPoolScanner {
+
+    private static final int UTF8 = 1;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+
+    private final Consumer<String> recorder;
+
+    ConstantPoolScanner(Consumer<String> recorder) {
+        this.recorder = recorder;
+    }
+
+    void scan(ClassReader reader) {
+        int itemCount = reader.getItemCount();
+        char[] buf = new char[reader.getMaxStringLength()];
+        //utf8 entries that are class names or string literals, never descriptors
+        boolean[] skip = new boolean[itemCount];
+        for (int i = 1; i < itemCount; i++) {
+            int offset = reader.getItem(i);
+            //long and double entries take two slots, the second one has no item
+            if (offset == 0) {
+                continue;
+            }
+            int tag = reader.b[offset - 1];
+            if (tag == CLASS) {
+                skip[reader.readUnsignedShort(offset)] = true;
+                Fangerprinter.recordObjectType(reader.readUTF8(offset, buf), recorder);
+            } else if (tag == STRING) {
+                skip[reader.readUnsignedShort(offset)] = true;
+            }
+        }
+        for (int i = 1; i < itemCount; i++) {
+            int offset = reader.getItem(i);
+            if (offset == 0 || skip[i] || reader.b[offset - 1] != UTF8 || !startsLikeDescriptor(reader, offset)) {
+                continue;
+            }
+            int length = readUtf8(reader.b, offset + 2, reader.readUnsignedShort(offset), buf);
+            if (isDescriptor(buf, length)) {
+                recordDescriptor(buf, length);
+            }
+        }
+    }
+
+    private static boolean startsLikeDescriptor(ClassReader reader, int offset) {
+        if (reader.readUnsignedShort(offset) < 2) {
+            return false;
+        }
+        byte first = reader.b[offset + 2];
+        return first == 'L' || first == '[' || first == '(';
+    }
+
+    //decodes the modified utf-8 used by class files into buf, returns the number of chars
+    private static int readUtf8(byte[] b, int index, int length, char[] buf) {
+        int end = index + length;
+        int size = 0;
+        while (index < end) {
+            int c = b[index++];
+            switch ((c >> 4) & 0xF) {
+                case 0xC:
+                case 0xD:
+                    buf[size++] = (char) (((c & 0x1F) << 6) | (b[index++] & 0x3F));
+                    break;
+                case 0xE:
+                    buf[size++] = (char) (((c & 0x0F) << 12) | ((b[index++] & 0x3F) << 6) | (b[index++] & 0x3F));
+                    break;
+                default:
+                    buf[size++] = (char) c;
+            }
+        }
+        return size;
+    }
+
+    //the method descriptor order of Fangerprinter.recordDescriptor, return type first
+    private void recordDescriptor(char[] value, int length) {
+        if (value[0] == '(') {
+            int end = 1;
+            while (value[end] != ')') {
+                end++;
+            }
+            recordFieldTypes(value, end + 1, length);
+            recordFieldTypes(value, 1, end);
+        } else {
+            recordFieldTypes(value, 0, length);
+        }
+    }
+
+    //only called on checked descriptors, every L has its ;
+    private void recordFieldTypes(char[] value, int start, int end) {
+        int i = start;
+        while (i < end) {
+            if (value[i] == 'L') {
+                int semicolon = i + 1;
+                while (value[semicolon] != ';') {
+                    semicolon++;
+                }
+                recorder.accept(new String(value, i + 1, semicolon - i - 1));
+                i = semicolon + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    static boolean isDescriptor(char[] value, int length) {
+        if (length == 0) {
+            return false;
+        }
+        if (value[0] != '(') {
+            return skipFieldType(value, length, 0) == length;
+        }
+        int i = 1;
+        while (i < length && value[i] != ')') {
+            i = skipFieldType(value, length, i);
+            if (i < 0) {
+                return false;
+            }
+        }
+        if (i >= length - 1) {
+            return false;
+        }
+        i++;
+        return value[i] == 'V' ? i + 1 == length : skipFieldType(value, length, i) == length;
+    }
+
+    //returns the index after the field type starting at start, or -1 if there is none
+    private static int skipFieldType(char[] value, int length, int start) {
+        int i = start;
+        while (i < length && value[i] == '[') {
+            i++;
+        }
+        if (i >= length) {
+            return -1;
+        }
+        switch (value[i]) {
+            case 'B':
+            case 'C':
+            case 'D':
+            case 'F':
+            case 'I':
+            case 'J':
+            case 'S':
+            case 'Z':
+                return i + 1;
+            case 'L':
+                int end = i + 1;
+                while (end < length && value[end] != ';') {
+                    char c = value[end];
+                    if (c == '.' || c == '[' || c == '<' || c == '>') {
+                        return -1;
+                    }
+                    end++;
+                }
+                return end < length && end > i + 1 ? end + 1 : -1;
+            default:
+                return -1;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.Lists;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Rewrites a class without its debug information and stack map frames, the way {@link ClassReader#SKIP_DEBUG} reads
+ * it, into a canonical form: the constant pool is rebuilt from what is left and the inner class entries are sorted,
+ * since the compiler orders both by what the debug information used first. Builds of the same source with other
+ * debug settings come out the same.
+ * <p>
+ * {@link #stripToApi(ClassReader)} goes further and keeps only what other classes compile against: the class header,
+ * its public and protected fields and methods without their code, and its public and protected member classes.
+ */
+final class DebugStripper extends ClassVisitor {
+
+    private static final int API_ACCESS = Opcodes.ACC_PUBLIC | Opcodes.ACC_PROTECTED;
+
+    private final boolean apiOnly;
+    private String className;
+    //name, outer name, inner name and access of every inner class entry
+    private final List<Object[]> innerClasses = Lists.newArrayList();
+
+    private DebugStripper(ClassVisitor writer, boolean apiOnly) {
+        super(Opcodes.ASM5, writer);
+        this.apiOnly = apiOnly;
+    }
+
+    static byte[] strip(ClassReader reader) {
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(new DebugStripper(writer, false), ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+
+    //method bodies are never read
+    static byte[] stripToApi(ClassReader reader) {
+        ClassWriter writer = new ClassWriter(0);
+        reader.accept(new DebugStripper(writer, true),
+                ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        className = name;
+        super.visit(version, access, name, signature, superName, interfaces);
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String desc) {
+        //the enclosing method of a local or anonymous class is an implementation detail
+        if (!apiOnly) {
+            super.visitOuterClass(owner, name, desc);
+        }
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        //classes used by method bodies and the private or anonymous classes of this one are left out
+        if (!apiOnly || (className.equals(outerName) && (access & API_ACCESS) != 0)) {
+            innerClasses.add(new Object[]{name, outerName, innerName, access});
+        }
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        if (apiOnly && (access & API_ACCESS) == 0) {
+            return null;
+        }
+        return super.visitField(access, name, desc, signature, value);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        if (apiOnly && (access & API_ACCESS) == 0) {
+            return null;
+        }
+        return super.visitMethod(access, name, desc, signature, exceptions);
+    }
+
+    @Override
+    public void visitEnd() {
+        innerClasses.sort(Comparator.comparing(entry -> (String) entry[0]));
+        for (Object[] entry : innerClasses) {
+            super.visitInnerClass((String) entry[0], (String) entry[1], (String) entry[2], (Integer) entry[3]);
+        }
+        super.visitEnd();
+    }
+}
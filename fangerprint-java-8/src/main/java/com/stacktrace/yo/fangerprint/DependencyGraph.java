@@ -0,0 +1,677 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+
+/**
+ * The classes a traversal reached and the references between them. Every class has an id, its position in class
+ * name order, and the references of all classes are kept in two int arrays, the ids every class references one
+ * after the other and where the ones of each class start.
+ * <p>
+ * References to classes that are not in the graph, such as excluded or missing ones, are left out. The references
+ * are also kept the other way around, so the classes and roots a changed class affects are found by walking from it
+ * to the classes that reference it.
+ * <p>
+ * A graph written with {@link Fangerprinter#writeDependencyGraph(File)} is read back with {@link #map(File)}, which
+ * queries the file in place, together with the digest of every class.
+ */
+public final class DependencyGraph {
+
+    private static final int MAGIC = 0xFA46E2E0;
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 8;
+
+    //class names in order, an id is an index
+    private final NameTable names;
+    //the references of class id are targets[offsets[id]] to targets[offsets[id + 1] - 1], in id order
+    private final IntBuffer offsets;
+    private final IntBuffer targets;
+    //the same for the classes that reference each class
+    private final IntBuffer referrerOffsets;
+    private final IntBuffer referrers;
+    //the ids of the classes the traversal started from, in id order
+    private final IntBuffer roots;
+    //digestLength bytes per class in id order, null when the graph holds no digests
+    private final ByteBuffer digests;
+    private final int digestLength;
+    private final String digestNamespace;
+
+    private DependencyGraph(NameTable names, IntBuffer offsets, IntBuffer targets, IntBuffer referrerOffsets,
+                            IntBuffer referrers, IntBuffer roots, ByteBuffer digests, int digestLength,
+                            String digestNamespace) {
+        this.names = names;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.referrerOffsets = referrerOffsets;
+        this.referrers = referrers;
+        this.roots = roots;
+        this.digests = digests;
+        this.digestLength = digestLength;
+        this.digestNamespace = digestNamespace;
+    }
+
+    /**
+     * @param roots the classes the traversal started from, those that are not in the graph are left out
+     */
+    static DependencyGraph build(Collection<String> roots, Collection<String> classes,
+                                 Function<String, Collection<String>> references) {
+        String[] names = sortedNames(classes);
+        return build(names, roots, id -> {
+            Collection<String> referenced = references.apply(names[id]);
+            return referenced == null ? new int[0] : referenced.stream()
+                    .mapToInt(reference -> Arrays.binarySearch(names, reference))
+                    .toArray();
+        });
+    }
+
+    private static String[] sortedNames(Collection<String> classes) {
+        String[] names = classes.toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
+    }
+
+    /**
+     * @param references the ids every class references, a negative id is a class that is not in the graph
+     */
+    private static DependencyGraph build(String[] names, Collection<String> roots, IntFunction<int[]> references) {
+        int[] offsets = new int[names.length + 1];
+        int[] targets = new int[Math.max(16, names.length * 4)];
+        int edges = 0;
+        int[] ids = new int[16];
+        for (int id = 0; id < names.length; id++) {
+            int[] referenced = references.apply(id);
+            if (ids.length < referenced.length) {
+                ids = new int[referenced.length];
+            }
+            int count = 0;
+            for (int target : referenced) {
+                if (target >= 0 && target != id) {
+                    ids[count++] = target;
+                }
+            }
+            Arrays.sort(ids, 0, count);
+            if (targets.length < edges + count) {
+                targets = Arrays.copyOf(targets, Math.max(targets.length * 2, edges + count));
+            }
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    targets[edges++] = ids[i];
+                }
+            }
+            offsets[id + 1] = edges;
+        }
+        targets = Arrays.copyOf(targets, edges);
+
+        int[] referrerOffsets = new int[names.length + 1];
+        int[] referrers = new int[edges];
+        for (int target : targets) {
+            referrerOffsets[target + 1]++;
+        }
+        for (int id = 0; id < names.length; id++) {
+            referrerOffsets[id + 1] += referrerOffsets[id];
+        }
+        //sources are visited in id order, so the referrers of every class come out in id order
+        int[] next = Arrays.copyOf(referrerOffsets, names.length);
+        for (int source = 0; source < names.length; source++) {
+            for (int i = offsets[source]; i < offsets[source + 1]; i++) {
+                referrers[next[targets[i]]++] = source;
+            }
+        }
+
+        int[] rootIds = roots.stream()
+                .mapToInt(root -> Arrays.binarySearch(names, root))
+                .filter(id -> id >= 0)
+                .sorted()
+                .distinct()
+                .toArray();
+        return new DependencyGraph(new HeapNames(names), IntBuffer.wrap(offsets), IntBuffer.wrap(targets),
+                IntBuffer.wrap(referrerOffsets), IntBuffer.wrap(referrers), IntBuffer.wrap(rootIds), null, 0, null);
+    }
+
+    /**
+     * Takes the references of classes while a traversal runs, by id, so that no lists of names are kept for the graph.
+     * Every name the traversal reports gets an id the first time it is seen, whether or not it ends up in the graph.
+     * Names are interned in an open addressing table of their own, so neither ids nor references are boxed. Safe to
+     * use from several threads, each examined class takes the lock once.
+     */
+    static final class Recorder {
+
+        //names and their ids at the same index, probed linearly, never more than half full
+        private String[] slotNames = new String[1024];
+        private int[] slotIds = new int[1024];
+        //the ids every examined class references, by the id of the class, null for classes that were not examined
+        private int[][] references = new int[256][];
+        private int size = 0;
+
+        synchronized void record(String internalName, Collection<String> referenced) {
+            int[] targets = new int[referenced.size()];
+            int i = 0;
+            for (String reference : referenced) {
+                targets[i++] = intern(reference);
+            }
+            references[intern(internalName)] = targets;
+        }
+
+        private int intern(String name) {
+            int slot = slotOf(slotNames, name);
+            if (slotNames[slot] != null) {
+                return slotIds[slot];
+            }
+            int id = size++;
+            slotNames[slot] = name;
+            slotIds[slot] = id;
+            if (id == references.length) {
+                references = Arrays.copyOf(references, id * 2);
+            }
+            if (size * 2 > slotNames.length) {
+                grow();
+            }
+            return id;
+        }
+
+        //the id of the name, or -1 when it was never recorded
+        private int find(String name) {
+            int slot = slotOf(slotNames, name);
+            return slotNames[slot] != null ? slotIds[slot] : -1;
+        }
+
+        private void grow() {
+            String[] names = new String[slotNames.length * 2];
+            int[] ids = new int[names.length];
+            for (int i = 0; i < slotNames.length; i++) {
+                if (slotNames[i] != null) {
+                    int slot = slotOf(names, slotNames[i]);
+                    names[slot] = slotNames[i];
+                    ids[slot] = slotIds[i];
+                }
+            }
+            slotNames = names;
+            slotIds = ids;
+        }
+
+        //the slot holding the name, or the empty one it would go in
+        private static int slotOf(String[] names, String name) {
+            int hash = name.hashCode();
+            int mask = names.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (names[slot] != null && !names[slot].equals(name)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * @param roots   the classes the traversal started from, those that are not in the graph are left out
+         * @param classes the classes of the graph, those without recorded references reference nothing
+         */
+        synchronized DependencyGraph build(Collection<String> roots, Collection<String> classes) {
+            String[] names = sortedNames(classes);
+            //recorded id to graph id and back
+            int[] graphIds = new int[size];
+            Arrays.fill(graphIds, -1);
+            int[] recordedIds = new int[names.length];
+            for (int id = 0; id < names.length; id++) {
+                recordedIds[id] = find(names[id]);
+                if (recordedIds[id] >= 0) {
+                    graphIds[recordedIds[id]] = id;
+                }
+            }
+            int[][] recorded = references;
+            return DependencyGraph.build(names, roots, id -> {
+                int[] targets = recordedIds[id] >= 0 ? recorded[recordedIds[id]] : null;
+                if (targets == null) {
+                    return new int[0];
+                }
+                int[] mapped = new int[targets.length];
+                for (int i = 0; i < targets.length; i++) {
+                    mapped[i] = graphIds[targets[i]];
+                }
+                return mapped;
+            });
+        }
+    }
+
+    /**
+     * Maps a graph written by {@link Fangerprinter#writeDependencyGraph(File)}, nothing is read into objects until
+     * it is asked for.
+     */
+    public static DependencyGraph map(File file) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        IntBuffer header = mapped.asIntBuffer();
+        if (mapped.capacity() < HEADER_INTS * 4 || header.get(0) != MAGIC || header.get(1) != VERSION) {
+            throw new IOException(file + " is not a dependency graph of version " + VERSION);
+        }
+        int classes = header.get(2);
+        int edges = header.get(3);
+        int rootCount = header.get(4);
+        int digestLength = header.get(5);
+        int namespaceLength = header.get(6);
+        int namesLength = header.get(7);
+        long expected = 4L * (HEADER_INTS + 3L * (classes + 1) + 2L * edges + rootCount)
+                + (long) classes * digestLength + namespaceLength + namesLength;
+        if (classes < 0 || edges < 0 || rootCount < 0 || digestLength < 0 || expected != mapped.capacity()) {
+            throw new IOException(file + " is not a complete dependency graph");
+        }
+        Section section = new Section(mapped, HEADER_INTS * 4);
+        IntBuffer nameOffsets = section.ints(classes + 1);
+        IntBuffer offsets = section.ints(classes + 1);
+        IntBuffer targets = section.ints(edges);
+        IntBuffer referrerOffsets = section.ints(classes + 1);
+        IntBuffer referrers = section.ints(edges);
+        IntBuffer roots = section.ints(rootCount);
+        ByteBuffer digests = section.bytes(classes * digestLength);
+        ByteBuffer namespace = section.bytes(namespaceLength);
+        ByteBuffer nameBytes = section.bytes(namesLength);
+        return new DependencyGraph(new MappedNames(nameOffsets, nameBytes), offsets, targets, referrerOffsets,
+                referrers, roots, digests, digestLength, StandardCharsets.UTF_8.decode(namespace).toString());
+    }
+
+    /**
+     * Writes the graph with the digest of every class, the file is replaced at once so readers never see half of it.
+     *
+     * @param digestNamespace what the digests were taken with
+     */
+    void write(File file, String digestNamespace, Function<String, byte[]> digestOf) throws IOException {
+        int classes = size();
+        byte[][] classDigests = new byte[classes][];
+        int[] nameOffsets = new int[classes + 1];
+        byte[][] nameBytes = new byte[classes][];
+        for (int id = 0; id < classes; id++) {
+            String name = names.nameOf(id);
+            nameBytes[id] = name.getBytes(StandardCharsets.UTF_8);
+            nameOffsets[id + 1] = nameOffsets[id] + nameBytes[id].length;
+            classDigests[id] = digestOf.apply(name);
+            Preconditions.checkState(classDigests[id].length == classDigests[0].length, "digests of different lengths");
+        }
+        byte[] namespace = digestNamespace.getBytes(StandardCharsets.UTF_8);
+        File parent = file.getAbsoluteFile().getParentFile();
+        Files.createDirectories(parent.toPath());
+        File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(classes);
+                out.writeInt(getEdgeCount());
+                out.writeInt(roots.limit());
+                out.writeInt(classes > 0 ? classDigests[0].length : 0);
+                out.writeInt(namespace.length);
+                out.writeInt(nameOffsets[classes]);
+                writeInts(out, IntBuffer.wrap(nameOffsets));
+                writeInts(out, offsets);
+                writeInts(out, targets);
+                writeInts(out, referrerOffsets);
+                writeInts(out, referrers);
+                writeInts(out, roots);
+                for (byte[] digest : classDigests) {
+                    out.write(digest);
+                }
+                out.write(namespace);
+                for (byte[] name : nameBytes) {
+                    out.write(name);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer values) throws IOException {
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeInt(values.get(i));
+        }
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public int getEdgeCount() {
+        return targets.limit();
+    }
+
+    /**
+     * @return the id of the class, or -1 when it is not in the graph
+     */
+    public int idOf(String internalName) {
+        return names.idOf(internalName);
+    }
+
+    public String nameOf(int id) {
+        Preconditions.checkElementIndex(id, size());
+        return names.nameOf(id);
+    }
+
+    public int getReferenceCount(int id) {
+        Preconditions.checkElementIndex(id, size());
+        return offsets.get(id + 1) - offsets.get(id);
+    }
+
+    //reports the id of every class the class references, in id order
+    public void forEachReference(int id, IntConsumer consumer) {
+        Preconditions.checkElementIndex(id, size());
+        for (int i = offsets.get(id); i < offsets.get(id + 1); i++) {
+            consumer.accept(targets.get(i));
+        }
+    }
+
+    public int[] getReferences(int id) {
+        Preconditions.checkElementIndex(id, size());
+        return copy(targets, offsets.get(id), offsets.get(id + 1));
+    }
+
+    /**
+     * @return the names of the classes the class references, empty when it is not in the graph
+     */
+    public Set<String> getReferences(String internalName) {
+        int id = idOf(internalName);
+        if (id < 0) {
+            return ImmutableSet.of();
+        }
+        ImmutableSet.Builder<String> references = ImmutableSet.builder();
+        forEachReference(id, target -> references.add(names.nameOf(target)));
+        return references.build();
+    }
+
+    public int[] getReferrers(int id) {
+        Preconditions.checkElementIndex(id, size());
+        return copy(referrers, referrerOffsets.get(id), referrerOffsets.get(id + 1));
+    }
+
+    /**
+     * @return the names of the classes that reference the class, empty when it is not in the graph
+     */
+    public Set<String> getReferrers(String internalName) {
+        int id = idOf(internalName);
+        if (id < 0) {
+            return ImmutableSet.of();
+        }
+        ImmutableSet.Builder<String> result = ImmutableSet.builder();
+        for (int i = referrerOffsets.get(id); i < referrerOffsets.get(id + 1); i++) {
+            result.add(names.nameOf(referrers.get(i)));
+        }
+        return result.build();
+    }
+
+    public Set<String> getRoots() {
+        ImmutableSet.Builder<String> result = ImmutableSet.builder();
+        for (int i = 0; i < roots.limit(); i++) {
+            result.add(names.nameOf(roots.get(i)));
+        }
+        return result.build();
+    }
+
+    /**
+     * @return the digest of the class, or null when the graph was not read from a file
+     */
+    public byte[] getDigest(int id) {
+        Preconditions.checkElementIndex(id, size());
+        if (digests == null) {
+            return null;
+        }
+        byte[] digest = new byte[digestLength];
+        ByteBuffer view = digests.duplicate();
+        view.position(id * digestLength);
+        view.get(digest);
+        return digest;
+    }
+
+    /**
+     * @return the hash function and scan mode the digests were taken with, or null when there are no digests
+     */
+    public String getDigestNamespace() {
+        return digestNamespace;
+    }
+
+    /**
+     * Finds every class whose closure holds one of the changed classes, walking only over those classes.
+     *
+     * @param changedClasses internal names, those that are not in the graph are left out
+     */
+    public Impact affectedBy(Collection<String> changedClasses) {
+        BitSet affected = new BitSet(size());
+        int[] pending = new int[16];
+        int pendingCount = 0;
+        for (String changed : changedClasses) {
+            int id = idOf(changed);
+            if (id >= 0 && !affected.get(id)) {
+                affected.set(id);
+                if (pendingCount == pending.length) {
+                    pending = Arrays.copyOf(pending, pendingCount * 2);
+                }
+                pending[pendingCount++] = id;
+            }
+        }
+        ImmutableSortedSet.Builder<String> classes = ImmutableSortedSet.naturalOrder();
+        while (pendingCount > 0) {
+            int id = pending[--pendingCount];
+            classes.add(names.nameOf(id));
+            for (int i = referrerOffsets.get(id); i < referrerOffsets.get(id + 1); i++) {
+                int referrer = referrers.get(i);
+                if (!affected.get(referrer)) {
+                    affected.set(referrer);
+                    if (pendingCount == pending.length) {
+                        pending = Arrays.copyOf(pending, pendingCount * 2);
+                    }
+                    pending[pendingCount++] = referrer;
+                }
+            }
+        }
+        ImmutableSortedSet.Builder<String> affectedRoots = ImmutableSortedSet.naturalOrder();
+        for (int i = 0; i < roots.limit(); i++) {
+            if (affected.get(roots.get(i))) {
+                affectedRoots.add(names.nameOf(roots.get(i)));
+            }
+        }
+        return new Impact(classes.build(), affectedRoots.build());
+    }
+
+    private static int[] copy(IntBuffer buffer, int from, int to) {
+        int[] values = new int[to - from];
+        for (int i = from; i < to; i++) {
+            values[i - from] = buffer.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * The classes and roots some changed classes affect, the changed classes included.
+     */
+    public static final class Impact {
+
+        private final Set<String> classes;
+        private final Set<String> roots;
+
+        private Impact(Set<String> classes, Set<String> roots) {
+            this.classes = classes;
+            this.roots = roots;
+        }
+
+        public Set<String> getClasses() {
+            return classes;
+        }
+
+        public Set<String> getRoots() {
+            return roots;
+        }
+
+        public boolean isEmpty() {
+            return classes.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Impact{roots=" + roots + ", classes=" + classes.size() + '}';
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DependencyGraph{classes=" + size() + ", references=" + getEdgeCount() + '}';
+    }
+
+    //the class names by id, in order
+    private interface NameTable {
+
+        int size();
+
+        String nameOf(int id);
+
+        //-1 when the name is not in the table
+        int idOf(String name);
+    }
+
+    private static final class HeapNames implements NameTable {
+
+        private final String[] names;
+
+        private HeapNames(String[] names) {
+            this.names = names;
+        }
+
+        @Override
+        public int size() {
+            return names.length;
+        }
+
+        @Override
+        public String nameOf(int id) {
+            return names[id];
+        }
+
+        @Override
+        public int idOf(String name) {
+            int id = Arrays.binarySearch(names, name);
+            return id >= 0 ? id : -1;
+        }
+    }
+
+    //utf-8 names one after the other, searched without decoding them into strings
+    private static final class MappedNames implements NameTable {
+
+        private final IntBuffer offsets;
+        private final ByteBuffer bytes;
+
+        private MappedNames(IntBuffer offsets, ByteBuffer bytes) {
+            this.offsets = offsets;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int size() {
+            return offsets.limit() - 1;
+        }
+
+        @Override
+        public String nameOf(int id) {
+            byte[] name = new byte[offsets.get(id + 1) - offsets.get(id)];
+            ByteBuffer view = bytes.duplicate();
+            view.position(offsets.get(id));
+            view.get(name);
+            return new String(name, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int idOf(String name) {
+            int low = 0;
+            int high = size() - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = compare(middle, name);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        //compares like String.compareTo, decoding the utf-8 of the name one char at a time
+        private int compare(int id, String name) {
+            int position = offsets.get(id);
+            int end = offsets.get(id + 1);
+            int index = 0;
+            char pendingLow = 0;
+            while ((position < end || pendingLow != 0) && index < name.length()) {
+                char c;
+                if (pendingLow != 0) {
+                    c = pendingLow;
+                    pendingLow = 0;
+                } else {
+                    int b = bytes.get(position++) & 0xFF;
+                    if (b < 0x80) {
+                        c = (char) b;
+                    } else if (b < 0xE0) {
+                        c = (char) (((b & 0x1F) << 6) | (bytes.get(position++) & 0x3F));
+                    } else if (b < 0xF0) {
+                        c = (char) (((b & 0x0F) << 12) | ((bytes.get(position++) & 0x3F) << 6)
+                                | (bytes.get(position++) & 0x3F));
+                    } else {
+                        int codePoint = ((b & 0x07) << 18) | ((bytes.get(position++) & 0x3F) << 12)
+                                | ((bytes.get(position++) & 0x3F) << 6) | (bytes.get(position++) & 0x3F);
+                        c = Character.highSurrogate(codePoint);
+                        pendingLow = Character.lowSurrogate(codePoint);
+                    }
+                }
+                char other = name.charAt(index++);
+                if (c != other) {
+                    return c - other;
+                }
+            }
+            boolean nameLeft = index < name.length();
+            boolean tableLeft = position < end || pendingLow != 0;
+            return tableLeft ? 1 : nameLeft ? -1 : 0;
+        }
+    }
+
+    //hands out the sections of a mapped file one after the other
+    private static final class Section {
+
+        private final ByteBuffer mapped;
+        private int position;
+
+        private Section(ByteBuffer mapped, int position) {
+            this.mapped = mapped;
+            this.position = position;
+        }
+
+        private IntBuffer ints(int count) {
+            return bytes(count * 4).asIntBuffer();
+        }
+
+        private ByteBuffer bytes(int length) {
+            ByteBuffer view = mapped.duplicate();
+            view.position(position).limit(position + length);
+            position += length;
+            return view.slice();
+        }
+    }
+}
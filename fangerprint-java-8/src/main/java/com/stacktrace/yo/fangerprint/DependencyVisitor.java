@@ -0,0 +1,210 @@
+package com.stacktrace.yo.fangerprint;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+import java.util.function.Consumer;
+
+/**
+ * Reports the internal name of every class a class references while it is being read, straight from the descriptors
+ * without building a {@link org.objectweb.asm.Type} for them.
+ * <p>
+ * Instances hold no traversal state of their own, but are not thread-safe; use one per thread or task.
+ */
+final class DependencyVisitor extends ClassVisitor {
+
+    private final Consumer<String> recorder;
+
+    DependencyVisitor(Consumer<String> recorder) {
+        super(Opcodes.ASM5);
+        this.recorder = recorder;
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        recordObjectType(superName);
+        recordObjectTypes(interfaces);
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        recordObjectType(name);
+        recordObjectType(outerName);
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        recordDescriptor(desc);
+        return _fieldVisitor;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        recordObjectTypes(exceptions);
+        recordDescriptor(desc);
+        return _methodVisitor;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+        recordDescriptor(desc);
+        return _annotationVisitor;
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+        recordDescriptor(desc);
+        return _annotationVisitor;
+    }
+
+    private AnnotationVisitor _annotationVisitor = new AnnotationVisitor(Opcodes.ASM5) {
+
+        @Override
+        public void visitEnum(String name, String desc, String value) {
+            recordDescriptor(desc);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String name, String desc) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+    };
+
+    private FieldVisitor _fieldVisitor = new FieldVisitor(Opcodes.ASM5) {
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+    };
+
+    private MethodVisitor _methodVisitor = new MethodVisitor(Opcodes.ASM5) {
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            return _annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+            visitLocals(local);
+            visitLocals(stack);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            recordObjectType(type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+            recordObjectType(owner);
+            recordDescriptor(desc);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc) {
+            recordObjectType(owner);
+            recordDescriptor(desc);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+            recordObjectType(owner);
+            recordDescriptor(desc);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String desc, int dims) {
+            recordObjectType(desc);
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            recordObjectType(type);
+        }
+
+        @Override
+        public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+
+        @Override
+        public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
+            recordDescriptor(desc);
+        }
+
+        @Override
+        public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index,
+                                                              String desc, boolean visible) {
+            recordDescriptor(desc);
+            return _annotationVisitor;
+        }
+    };
+
+    private void visitLocals(Object[] locals) {
+        if (locals != null) {
+            for (Object local : locals) {
+                if (local instanceof String) {
+                    recordObjectType((String) local);
+                }
+            }
+        }
+    }
+
+    private void recordObjectTypes(String[] names) {
+        if (names != null) {
+            for (String name : names) {
+                recordObjectType(name);
+            }
+        }
+    }
+
+    private void recordObjectType(String name) {
+        if (name != null) {
+            Fangerprinter.recordObjectType(name, recorder);
+        }
+    }
+
+    private void recordDescriptor(String desc) {
+        Fangerprinter.recordDescriptor(desc, recorder);
+    }
+}
@@ -0,0 +1,263 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Chars;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Matches names against a set of glob patterns. Patterns without wildcards are kept in a hash set, the others are
+ * compiled into one deterministic automaton so that a match costs a table lookup per character and allocates nothing.
+ * <p>
+ * In a pattern {@code ?} is any character but {@code /}, {@code *} is any run of characters without {@code /} and
+ * {@code **} is any run of characters at all. Every other character stands for itself.
+ */
+final class ExclusionMatcher {
+
+    private static final ExclusionMatcher NONE = new ExclusionMatcher(ImmutableSet.of(), new int[0][], new boolean[0], new char[0]);
+
+    private static final char SEPARATOR = '/';
+    private static final int LITERAL = 0;
+    private static final int ANY_CHARACTER = 1;
+    private static final int ANY_IN_SEGMENT = 2;
+    private static final int ANY = 3;
+    private static final int DEAD = -1;
+
+    //the packages of classes that come with the runtime
+    static final ExclusionMatcher BOOTSTRAP = compile(ImmutableList.of("java/**", "javax/**", "jdk/**", "sun/**", "com/sun**"));
+
+    //the patterns without wildcards
+    private final Set<String> names;
+    //transitions[state][character class], the start state is 0, no states when every pattern is a name
+    private final int[][] transitions;
+    private final boolean[] accepting;
+    //the characters the patterns name, sorted, each is a class of its own, every other character but / shares one
+    private final char[] literals;
+    private final int[] asciiClasses = new int[128];
+
+    private ExclusionMatcher(Set<String> names, int[][] transitions, boolean[] accepting, char[] literals) {
+        this.names = names;
+        this.transitions = transitions;
+        this.accepting = accepting;
+        this.literals = literals;
+        for (char c = 0; c < asciiClasses.length; c++) {
+            int index = Arrays.binarySearch(literals, c);
+            asciiClasses[c] = index >= 0 ? index : literals.length;
+        }
+    }
+
+    static ExclusionMatcher compile(Collection<String> patterns) {
+        if (patterns.isEmpty()) {
+            return NONE;
+        }
+        ImmutableSet.Builder<String> names = ImmutableSet.builder();
+        List<Token[]> compiled = Lists.newArrayList();
+        TreeSet<Character> literalSet = new TreeSet<>();
+        literalSet.add(SEPARATOR);
+        for (String pattern : patterns) {
+            if (pattern.indexOf('*') < 0 && pattern.indexOf('?') < 0) {
+                names.add(pattern);
+            } else {
+                compiled.add(tokenize(pattern, literalSet));
+            }
+        }
+        if (compiled.isEmpty()) {
+            return new ExclusionMatcher(names.build(), new int[0][], new boolean[0], new char[0]);
+        }
+        return new Compiler(names.build(), compiled, Chars.toArray(literalSet)).compile();
+    }
+
+    //whether no pattern was given, so nothing matches
+    boolean isEmpty() {
+        return names.isEmpty() && transitions.length == 0;
+    }
+
+    boolean matches(String name) {
+        if (names.contains(name)) {
+            return true;
+        }
+        if (transitions.length == 0) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            state = transitions[state][classOf(name.charAt(i))];
+            if (state == DEAD) {
+                return false;
+            }
+        }
+        return accepting[state];
+    }
+
+    private int classOf(char c) {
+        if (c < asciiClasses.length) {
+            return asciiClasses[c];
+        }
+        int index = Arrays.binarySearch(literals, c);
+        return index >= 0 ? index : literals.length;
+    }
+
+    private static Token[] tokenize(String pattern, TreeSet<Character> literalSet) {
+        List<Token> tokens = Lists.newArrayList();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '*' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '*') {
+                tokens.add(new Token(ANY, c));
+                i++;
+            } else if (c == '*') {
+                tokens.add(new Token(ANY_IN_SEGMENT, c));
+            } else if (c == '?') {
+                tokens.add(new Token(ANY_CHARACTER, c));
+            } else {
+                tokens.add(new Token(LITERAL, c));
+                literalSet.add(c);
+            }
+        }
+        return tokens.toArray(new Token[0]);
+    }
+
+    private static final class Token {
+
+        private final int kind;
+        private final char character;
+
+        private Token(int kind, char character) {
+            this.kind = kind;
+            this.character = character;
+        }
+
+        //whether the token consumes a character of the class, the class of other characters has no literal
+        private boolean accepts(int characterClass, char[] literals) {
+            boolean separator = characterClass < literals.length && literals[characterClass] == SEPARATOR;
+            switch (kind) {
+                case LITERAL:
+                    return characterClass < literals.length && literals[characterClass] == character;
+                case ANY_CHARACTER:
+                case ANY_IN_SEGMENT:
+                    return !separator;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    //the subset construction over the positions of every pattern
+    private static final class Compiler {
+
+        private final Set<String> names;
+        private final List<Token[]> patterns;
+        private final char[] literals;
+        //the first position of every pattern, a position past the last token accepts
+        private final int[] offsets;
+        //the pattern and token of every position, so a step only looks at the positions of its state
+        private final int[] patternOf;
+        private final int[] tokenOf;
+
+        private Compiler(Set<String> names, List<Token[]> patterns, char[] literals) {
+            this.names = names;
+            this.patterns = patterns;
+            this.literals = literals;
+            this.offsets = new int[patterns.size() + 1];
+            for (int p = 0; p < patterns.size(); p++) {
+                offsets[p + 1] = offsets[p] + patterns.get(p).length + 1;
+            }
+            this.patternOf = new int[offsets[patterns.size()]];
+            this.tokenOf = new int[offsets[patterns.size()]];
+            for (int p = 0; p < patterns.size(); p++) {
+                for (int position = offsets[p]; position < offsets[p + 1]; position++) {
+                    patternOf[position] = p;
+                    tokenOf[position] = position - offsets[p];
+                }
+            }
+        }
+
+        private ExclusionMatcher compile() {
+            int classes = literals.length + 1;
+            Map<BitSet, Integer> states = Maps.newHashMap();
+            List<int[]> transitions = Lists.newArrayList();
+            List<Boolean> accepting = Lists.newArrayList();
+            LinkedList<BitSet> pending = Lists.newLinkedList();
+
+            BitSet start = new BitSet();
+            for (int p = 0; p < patterns.size(); p++) {
+                addClosed(start, p, 0);
+            }
+            states.put(start, 0);
+            pending.add(start);
+            transitions.add(new int[classes]);
+            accepting.add(isAccepting(start));
+            while (!pending.isEmpty()) {
+                BitSet current = pending.removeFirst();
+                int[] row = transitions.get(states.get(current));
+                for (int characterClass = 0; characterClass < classes; characterClass++) {
+                    BitSet next = step(current, characterClass);
+                    if (next.isEmpty()) {
+                        row[characterClass] = DEAD;
+                        continue;
+                    }
+                    Integer state = states.get(next);
+                    if (state == null) {
+                        state = states.size();
+                        states.put(next, state);
+                        pending.add(next);
+                        transitions.add(new int[classes]);
+                        accepting.add(isAccepting(next));
+                    }
+                    row[characterClass] = state;
+                }
+            }
+            boolean[] accepts = new boolean[accepting.size()];
+            for (int i = 0; i < accepts.length; i++) {
+                accepts[i] = accepting.get(i);
+            }
+            return new ExclusionMatcher(names, transitions.toArray(new int[0][]), accepts, literals);
+        }
+
+        private BitSet step(BitSet current, int characterClass) {
+            BitSet next = new BitSet();
+            for (int position = current.nextSetBit(0); position >= 0; position = current.nextSetBit(position + 1)) {
+                int p = patternOf[position];
+                int i = tokenOf[position];
+                Token[] tokens = patterns.get(p);
+                //past the last token nothing is consumed
+                if (i == tokens.length || !tokens[i].accepts(characterClass, literals)) {
+                    continue;
+                }
+                //wildcards over runs stay where they are, everything else moves on
+                boolean repeats = tokens[i].kind == ANY_IN_SEGMENT || tokens[i].kind == ANY;
+                addClosed(next, p, repeats ? i : i + 1);
+            }
+            return next;
+        }
+
+        //adds the position and every position reachable from it without consuming a character
+        private void addClosed(BitSet positions, int pattern, int position) {
+            Token[] tokens = patterns.get(pattern);
+            positions.set(offsets[pattern] + position);
+            while (position < tokens.length
+                    && (tokens[position].kind == ANY_IN_SEGMENT || tokens[position].kind == ANY)) {
+                position++;
+                positions.set(offsets[pattern] + position);
+            }
+        }
+
+        private boolean isAccepting(BitSet positions) {
+            for (int position = positions.nextSetBit(0); position >= 0; position = positions.nextSetBit(position + 1)) {
+                if (tokenOf[position] == patterns.get(patternOf[position]).length) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
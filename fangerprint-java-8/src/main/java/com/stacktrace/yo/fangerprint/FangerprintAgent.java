@@ -0,0 +1,150 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.io.Resources;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.instrument.UnmodifiableClassException;
+import java.net.URL;
+import java.security.CodeSource;
+import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Digests every class as the JVM defines it, from the bytes handed to a {@link ClassFileTransformer}, so the
+ * classes an application really loads are known without reading anything again:
+ * <pre>
+ * java -javaagent:fangerprint-java-8-1.0.jar=hash=sha256 ...
+ * </pre>
+ * Arguments, comma separated: hash (md5, sha1, sha256 or sha512, md5 when not given) and retransform (true to also
+ * digest the classes loaded before the agent started, from the bytes the JVM gives back for them, which may differ
+ * from the class files).
+ * <p>
+ * The thread defining a class only queues a copy of its bytes, they are digested and scanned on a daemon thread.
+ * <p>
+ * The digests are in {@link #getLoadedClasses()}, which a fangerprinter takes with
+ * {@link Fangerprinter.FangerprintBuilder#useLoadedClasses(LoadedClasses)}, with the constant pool scanner, as that
+ * is how the references of a class are recorded. Guava, ASM and slf4j have to be on the class path of the
+ * application.
+ */
+public final class FangerprintAgent {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FangerprintAgent.class);
+
+    private static volatile LoadedClasses loadedClasses = null;
+
+    private FangerprintAgent() {
+    }
+
+    public static void premain(String arguments, Instrumentation instrumentation) {
+        start(arguments, instrumentation);
+    }
+
+    public static void agentmain(String arguments, Instrumentation instrumentation) {
+        start(arguments, instrumentation);
+    }
+
+    /**
+     * @return the classes defined since the agent started, or null when it is not running
+     */
+    public static LoadedClasses getLoadedClasses() {
+        return loadedClasses;
+    }
+
+    /**
+     * Starts watching class definitions, an agent already running keeps its digests.
+     */
+    public static synchronized LoadedClasses install(Instrumentation instrumentation, HashFunction hashFunction,
+                                                     boolean retransform) {
+        if (loadedClasses != null) {
+            return loadedClasses;
+        }
+        ExecutorService digester = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("fangerprint-agent-%d")
+                .setDaemon(true)
+                .build());
+        LoadedClasses loaded = new LoadedClasses(hashFunction, digester);
+        DigestingTransformer transformer = new DigestingTransformer(loaded);
+        //the classes the transformer and the digesting thread need are loaded before the transformer is added
+        transformer.warmUp();
+        digester.execute(() -> {
+        });
+        boolean canRetransform = retransform && instrumentation.isRetransformClassesSupported();
+        instrumentation.addTransformer(transformer, canRetransform);
+        loadedClasses = loaded;
+        if (canRetransform) {
+            Class[] modifiable = Arrays.stream(instrumentation.getAllLoadedClasses())
+                    .filter(instrumentation::isModifiableClass)
+                    .toArray(Class[]::new);
+            try {
+                instrumentation.retransformClasses(modifiable);
+            } catch (UnmodifiableClassException | RuntimeException e) {
+                LOGGER.warn("Unable to digest the classes loaded before the agent started", e);
+            }
+        }
+        LOGGER.debug("Digesting classes as they are defined, {} so far", loaded.size());
+        return loaded;
+    }
+
+    private static void start(String arguments, Instrumentation instrumentation) {
+        Map<String, String> settings = arguments == null || arguments.isEmpty()
+                ? ImmutableMap.of()
+                : Splitter.on(',').trimResults().withKeyValueSeparator('=').split(arguments);
+        HashFunction hashFunction = HashFunctions.forName(settings.getOrDefault("hash", "md5"));
+        install(instrumentation, hashFunction, Boolean.parseBoolean(settings.get("retransform")));
+    }
+
+    private static final class DigestingTransformer implements ClassFileTransformer {
+
+        private final LoadedClasses loaded;
+
+        private DigestingTransformer(LoadedClasses loaded) {
+            this.loaded = loaded;
+        }
+
+        //leaves every class as it is
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            //classes made at runtime, such as lambdas, have no name
+            if (className == null) {
+                return null;
+            }
+            try {
+                loaded.add(className, classfileBuffer.clone(), getCodeSourceName(protectionDomain));
+            } catch (RuntimeException e) {
+                LOGGER.trace("Unable to queue {}", className, e);
+            }
+            return null;
+        }
+
+        private void warmUp() {
+            String internalName = LoadedClasses.class.getName().replace('.', '/');
+            try {
+                byte[] bytes = Resources.toByteArray(LoadedClasses.class.getResource("/" + internalName + ".class"));
+                new LoadedClasses(loaded.getHashFunction(), MoreExecutors.directExecutor())
+                        .add(internalName, bytes, getCodeSourceName(null));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.trace("Unable to warm up", e);
+            }
+        }
+
+        private static String getCodeSourceName(ProtectionDomain protectionDomain) {
+            CodeSource codeSource = protectionDomain != null ? protectionDomain.getCodeSource() : null;
+            URL location = codeSource != null ? codeSource.getLocation() : null;
+            return location != null ? new File(location.getPath()).getName() : "";
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.stacktrace.yo.fangerprint;
+
+/**
+ * Told about every fingerprint a {@link Fangerprinter} computes, see
+ * {@link Fangerprinter.FangerprintBuilder#withListener(FangerprintListener)}.
+ * <p>
+ * Listeners are called on the thread that computed the fingerprint, once it is computed. An exception thrown by a
+ * listener is logged and does not fail the fingerprint.
+ */
+public interface FangerprintListener {
+
+    void onFingerprint(FangerprintMetrics metrics);
+}
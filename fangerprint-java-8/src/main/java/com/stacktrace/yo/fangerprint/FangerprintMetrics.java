@@ -0,0 +1,150 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What one fingerprint cost.
+ * <p>
+ * The phase times are summed over every thread that took part, so with a parallel traversal they can add up to
+ * more than the total time, which is the time the caller waited.
+ */
+public final class FangerprintMetrics {
+
+    private final List<String> rootClasses;
+    private final long totalNanos;
+    private final long resolveNanos;
+    private final long readNanos;
+    private final long parseNanos;
+    private final long sortNanos;
+    private final long hashNanos;
+    private final long bytesRead;
+    private final long bytesHashed;
+    private final long cacheHits;
+    private final int dependencyCount;
+    private final int excludedCount;
+    private final int failedCount;
+    private final Map<String, Long> classesByCodeSource;
+
+    FangerprintMetrics(List<String> rootClasses, long totalNanos, long resolveNanos, long readNanos, long parseNanos,
+                       long sortNanos, long hashNanos, long bytesRead, long bytesHashed, long cacheHits,
+                       int dependencyCount, int excludedCount, int failedCount, Map<String, Long> classesByCodeSource) {
+        this.rootClasses = ImmutableList.copyOf(rootClasses);
+        this.totalNanos = totalNanos;
+        this.resolveNanos = resolveNanos;
+        this.readNanos = readNanos;
+        this.parseNanos = parseNanos;
+        this.sortNanos = sortNanos;
+        this.hashNanos = hashNanos;
+        this.bytesRead = bytesRead;
+        this.bytesHashed = bytesHashed;
+        this.cacheHits = cacheHits;
+        this.dependencyCount = dependencyCount;
+        this.excludedCount = excludedCount;
+        this.failedCount = failedCount;
+        this.classesByCodeSource = ImmutableSortedMap.copyOf(classesByCodeSource);
+    }
+
+    /**
+     * @return the names of the root classes of the fingerprint, more than one for a batch
+     */
+    public List<String> getRootClasses() {
+        return rootClasses;
+    }
+
+    public long getTotalTime(TimeUnit unit) {
+        return unit.convert(totalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time spent finding class files and deciding whether classes are ignored
+     */
+    public long getResolveTime(TimeUnit unit) {
+        return unit.convert(resolveNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time spent reading class bytes
+     */
+    public long getReadTime(TimeUnit unit) {
+        return unit.convert(readNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time spent parsing classes and finding their references
+     */
+    public long getParseTime(TimeUnit unit) {
+        return unit.convert(parseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time spent ordering classes by name before hashing
+     */
+    public long getSortTime(TimeUnit unit) {
+        return unit.convert(sortNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time spent hashing, class digests included
+     */
+    public long getHashTime(TimeUnit unit) {
+        return unit.convert(hashNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getBytesHashed() {
+        return bytesHashed;
+    }
+
+    /**
+     * @return the classes whose digest and references came from the cache directory
+     */
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public int getDependencyCount() {
+        return dependencyCount;
+    }
+
+    public int getExcludedCount() {
+        return excludedCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return how many classes were found in every jar or class directory, by its name
+     */
+    public Map<String, Long> getClassesByCodeSource() {
+        return classesByCodeSource;
+    }
+
+    @Override
+    public String toString() {
+        return "FangerprintMetrics{" +
+                "rootClasses=" + rootClasses +
+                ", totalMillis=" + getTotalTime(TimeUnit.MILLISECONDS) +
+                ", resolveMillis=" + getResolveTime(TimeUnit.MILLISECONDS) +
+                ", readMillis=" + getReadTime(TimeUnit.MILLISECONDS) +
+                ", parseMillis=" + getParseTime(TimeUnit.MILLISECONDS) +
+                ", sortMillis=" + getSortTime(TimeUnit.MILLISECONDS) +
+                ", hashMillis=" + getHashTime(TimeUnit.MILLISECONDS) +
+                ", bytesRead=" + bytesRead +
+                ", bytesHashed=" + bytesHashed +
+                ", cacheHits=" + cacheHits +
+                ", dependencies=" + dependencyCount +
+                ", excluded=" + excludedCount +
+                ", failed=" + failedCount +
+                "}";
+    }
+}
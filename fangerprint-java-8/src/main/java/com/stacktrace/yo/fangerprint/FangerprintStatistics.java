@@ -0,0 +1,112 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the metrics of the last fingerprint and totals over all of them, for JMX.
+ */
+final class FangerprintStatistics implements FangerprintListener, FangerprintStatisticsMXBean {
+
+    private final LongAdder fingerprintCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private volatile FangerprintMetrics last = null;
+
+    @Override
+    public void onFingerprint(FangerprintMetrics metrics) {
+        fingerprintCount.increment();
+        totalNanos.add(metrics.getTotalTime(TimeUnit.NANOSECONDS));
+        last = metrics;
+    }
+
+    @Override
+    public long getFingerprintCount() {
+        return fingerprintCount.sum();
+    }
+
+    @Override
+    public long getTotalTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+    }
+
+    @Override
+    public long getLastTotalTimeMillis() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getTotalTime(TimeUnit.MILLISECONDS) : 0;
+    }
+
+    @Override
+    public long getLastResolveTimeMillis() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getResolveTime(TimeUnit.MILLISECONDS) : 0;
+    }
+
+    @Override
+    public long getLastReadTimeMillis() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getReadTime(TimeUnit.MILLISECONDS) : 0;
+    }
+
+    @Override
+    public long getLastParseTimeMillis() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getParseTime(TimeUnit.MILLISECONDS) : 0;
+    }
+
+    @Override
+    public long getLastSortTimeMillis() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getSortTime(TimeUnit.MILLISECONDS) : 0;
+    }
+
+    @Override
+    public long getLastHashTimeMillis() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getHashTime(TimeUnit.MILLISECONDS) : 0;
+    }
+
+    @Override
+    public long getLastBytesRead() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getBytesRead() : 0;
+    }
+
+    @Override
+    public long getLastBytesHashed() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getBytesHashed() : 0;
+    }
+
+    @Override
+    public long getLastCacheHits() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getCacheHits() : 0;
+    }
+
+    @Override
+    public int getLastDependencyCount() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getDependencyCount() : 0;
+    }
+
+    @Override
+    public int getLastExcludedCount() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getExcludedCount() : 0;
+    }
+
+    @Override
+    public int getLastFailedCount() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getFailedCount() : 0;
+    }
+
+    @Override
+    public Map<String, Long> getLastClassesByCodeSource() {
+        FangerprintMetrics metrics = last;
+        return metrics != null ? metrics.getClassesByCodeSource() : ImmutableMap.of();
+    }
+}
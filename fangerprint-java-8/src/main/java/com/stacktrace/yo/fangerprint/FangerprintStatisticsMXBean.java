@@ -0,0 +1,40 @@
+package com.stacktrace.yo.fangerprint;
+
+import java.util.Map;
+
+/**
+ * The JMX view of the fingerprints a {@link Fangerprinter} computed, see
+ * {@link Fangerprinter.FangerprintBuilder#withMBean(String)}. Times are in milliseconds.
+ */
+public interface FangerprintStatisticsMXBean {
+
+    long getFingerprintCount();
+
+    long getTotalTimeMillis();
+
+    long getLastTotalTimeMillis();
+
+    long getLastResolveTimeMillis();
+
+    long getLastReadTimeMillis();
+
+    long getLastParseTimeMillis();
+
+    long getLastSortTimeMillis();
+
+    long getLastHashTimeMillis();
+
+    long getLastBytesRead();
+
+    long getLastBytesHashed();
+
+    long getLastCacheHits();
+
+    int getLastDependencyCount();
+
+    int getLastExcludedCount();
+
+    int getLastFailedCount();
+
+    Map<String, Long> getLastClassesByCodeSource();
+}
@@ -1,306 +1,562 @@
 package com.stacktrace.yo.fangerprint;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
-import org.objectweb.asm.AnnotationVisitor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.ClassVisitor;
-import org.objectweb.asm.FieldVisitor;
-import org.objectweb.asm.Label;
-import org.objectweb.asm.MethodVisitor;
-import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.TypePath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Created by Stacktraceyo on 8/11/17.
+ * <p>
+ * A fangerprinter only holds the settings it was built with, every call traverses with a context of its own, so
+ * one instance can be shared by threads computing hashes at the same time. The getters report on the last call
+ * that completed.
  */
 
-public class Fangerprinter {
+public class Fangerprinter implements Closeable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Fangerprinter.class);
 
-    private Map<String, ClassReader> _dependencies = Maps.newHashMap();
-    private Set<String> _failedDependencies = Sets.newHashSet();
-    private Set<Class> _resolvedDependencies = null;
-    private LinkedList<ClassReader> _pendingTraversalList = Lists.newLinkedList();
-    private Class rootClass;
-    private HashFunction hashFunction;
-    private Set<String> _classesToExclude = Sets.newHashSet();
-    private Set<String> _excludedClasses = Sets.newHashSet();
-    private ArrayList<Class> _excludedClassesFromExcludedJar = Lists.newArrayList();
-    private Set<String> _excludedJarNames = Sets.newHashSet();
-    private List<ClassLoader> _classesLoaders = new ArrayList<>();
-    private boolean _excludeJavaBootstrap = false;
+    private final Class rootClass;
+    private final HashFunction hashFunction;
+    private final Set<String> _excludedJarNames;
+    //every class, package and pattern rule over internal names
+    private final ExclusionMatcher _classMatcher;
+    //every jar name and jar pattern rule
+    private final ExclusionMatcher _jarMatcher;
+    private final List<ClassLoader> _classesLoaders;
+    private final boolean _excludeJavaBootstrap;
+    private final boolean _scanConstantPool;
+    private final boolean _stripDebug;
+    private final boolean _apiOnly;
+    private final int _parallelism;
+    private final ForkJoinPool _forkJoinPool;
+    private final File _cacheDirectory;
+    private final boolean _streamHashing;
+    private final boolean _readJars;
+    private final boolean _mapJars;
+    private final boolean _resolveFromResources;
+    //listed by the first traversal that looks for a class, null without an index
+    private final Supplier<ClasspathIndex> _classpathIndex;
+    private final boolean _incremental;
+    private final LoadedClasses _loadedClasses;
+    private final boolean _readArtifactIndexes;
+    private final double _backgroundRateLimit;
+    private final int _pipelineCapacity;
+    private final boolean _recordGraph;
+    private final Executor _resolveExecutor;
+    private final Executor _ioExecutor;
+    private final Executor _parseExecutor;
+    private final List<FangerprintListener> _listeners;
+    private final ObjectName _mbeanName;
+
+    //shared by every call, a class is excluded or not whichever traversal reaches it
+    private final Set<String> _excludedClasses = Sets.newConcurrentHashSet();
+    private final Map<String, Boolean> _ignoreDecisions = Maps.newConcurrentMap();
+    //the artifact index of every jar a class was found in, by jar path
+    private final Map<String, StampedArtifactIndex> _artifactIndexes = Maps.newConcurrentMap();
+    //the classes no loader had, kept while no class directory is known to have changed
+    private final Set<String> _missingClasses = Sets.newConcurrentHashSet();
+    //incremental runs share one context, and run one at a time on it
+    private final TraversalContext _incrementalContext;
+    private ClassDirectoryWatcher _watcher = null;
+    private boolean _watchUnavailable = false;
+    private volatile TraversalContext _lastContext;
+
+    //kept for callers of the former implicit constructor, newBuilder is the way to configure one
+    public Fangerprinter() {
+        this(new FangerprintBuilder(null));
+    }
+
+    private Fangerprinter(FangerprintBuilder builder) {
+        this.rootClass = builder.rootClass;
+        this.hashFunction = builder.hashFunction;
+        this._classesLoaders = ImmutableList.copyOf(builder.classLoaders);
+        this._excludeJavaBootstrap = builder.excludeJavaBootstrap;
+        this._scanConstantPool = builder.scanConstantPool;
+        this._stripDebug = builder.stripDebug;
+        this._apiOnly = builder.apiOnly;
+        this._parallelism = builder.parallelism;
+        this._forkJoinPool = builder.forkJoinPool;
+        this._cacheDirectory = builder.cacheDirectory;
+        this._streamHashing = builder.streamHashing;
+        this._readJars = builder.readJars;
+        this._mapJars = builder.mapJars;
+        this._resolveFromResources = builder.resolveFromResources;
+        this._classpathIndex = builder.indexClasspath
+                ? LoaderClassSource.indexOf(getClass().getClassLoader(), _classesLoaders)
+                : null;
+        this._incremental = builder.incremental;
+        this._loadedClasses = builder.loadedClasses;
+        this._readArtifactIndexes = builder.readArtifactIndexes;
+        this._backgroundRateLimit = builder.backgroundRateLimit;
+        this._pipelineCapacity = builder.pipelineCapacity;
+        this._recordGraph = builder.recordGraph;
+        this._resolveExecutor = builder.resolveExecutor;
+        this._ioExecutor = builder.ioExecutor;
+        this._parseExecutor = builder.parseExecutor;
+        if (_loadedClasses != null) {
+            Preconditions.checkArgument(_loadedClasses.getHashFunction().equals(hashFunction),
+                    "Loaded classes are digested with %s, not %s", _loadedClasses.getHashFunction(), hashFunction);
+            Preconditions.checkArgument(!_stripDebug && !_apiOnly, "Loaded classes are digested as they were defined");
+            Preconditions.checkArgument(_scanConstantPool, "Loaded classes hold the references of the constant pool scanner");
+        }
+        this._mbeanName = builder.mbeanName;
+        ImmutableList.Builder<FangerprintListener> listeners = ImmutableList.<FangerprintListener>builder()
+                .addAll(builder.listeners);
+        if (_mbeanName != null) {
+            FangerprintStatistics statistics = new FangerprintStatistics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(statistics, _mbeanName);
+            } catch (JMException e) {
+                throw new IllegalStateException("Unable to register " + _mbeanName, e);
+            }
+            listeners.add(statistics);
+        }
+        this._listeners = listeners.build();
+        this._excludedJarNames = initIgnoreJars(builder.excludedClassesFromExcludedJar, builder.excludedJarNames);
+        this._classMatcher = ExclusionMatcher.compile(builder.classPatternsToExclude.stream()
+                .map(Fangerprinter::convertClassNameFromDotNotation)
+                .collect(Collectors.toList()));
+        this._jarMatcher = ExclusionMatcher.compile(ImmutableList.<String>builder()
+                .addAll(_excludedJarNames)
+                .addAll(builder.jarPatternsToExclude)
+                .build());
+        this._incrementalContext = _incremental ? new TraversalContext() : null;
+        this._lastContext = new TraversalContext();
+    }
 
     public static FangerprintBuilder newBuilder(Class rootClass) {
         return new FangerprintBuilder(rootClass);
     }
 
-    private ClassVisitor _classVisitor = new ClassVisitor(Opcodes.ASM5) {
-
-        @Override
-        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
-            recordObjectType(superName);
-            recordObjectType(interfaces);
+    //reports the internal name of every class the type is made of
+    static void recordType(Type t, Consumer<String> recorder) {
+        switch (t.getSort()) {
+            case Type.ARRAY:
+                recordType(t.getElementType(), recorder);
+                break;
+            case Type.OBJECT:
+                recorder.accept(t.getInternalName());
+                break;
+            case Type.METHOD:
+                recordType(t.getReturnType(), recorder);
+                Arrays.stream(t.getArgumentTypes())
+                        .forEach(argumentType -> recordType(argumentType, recorder));
+                break;
         }
+    }
 
-        @Override
-        public void visitInnerClass(String name, String outerName, String innerName, int access) {
-            recordObjectType(name);
-            recordObjectType(outerName);
+    //reports the internal name of every class a field or method descriptor is made of, in the order recordType
+    //does, without building a type for it
+    static void recordDescriptor(String descriptor, Consumer<String> recorder) {
+        if (descriptor.charAt(0) == '(') {
+            int end = descriptor.indexOf(')');
+            recordFieldTypes(descriptor, end + 1, descriptor.length(), recorder);
+            recordFieldTypes(descriptor, 1, end, recorder);
+        } else {
+            recordFieldTypes(descriptor, 0, descriptor.length(), recorder);
         }
+    }
 
-        @Override
-        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-            recordType(Type.getType(desc));
-            return myFieldVisitor;
+    //an internal name, or the descriptor of an array type
+    static void recordObjectType(String name, Consumer<String> recorder) {
+        if (name.charAt(0) == '[') {
+            recordDescriptor(name, recorder);
+        } else {
+            recorder.accept(name);
         }
+    }
 
-        @Override
-        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
-            recordObjectType(exceptions);
-            recordType(Type.getMethodType(desc));
-            return _methodVisitor;
+    private static void recordFieldTypes(String descriptor, int start, int end, Consumer<String> recorder) {
+        int i = start;
+        while (i < end) {
+            if (descriptor.charAt(i) == 'L') {
+                int semicolon = descriptor.indexOf(';', i);
+                if (semicolon < 0) {
+                    return;
+                }
+                recorder.accept(descriptor.substring(i + 1, semicolon));
+                i = semicolon + 1;
+            } else {
+                i++;
+            }
         }
+    }
 
-        @Override
-        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+    //hands the class to pending the first time it is seen, unless it is ignored
+    private void claimType(TraversalContext context, String internalName, Consumer<String> pending) {
+        if (context.visitedTypes.add(internalName) && !shouldIgnoreClass(context, internalName)) {
+            pending.accept(internalName);
+            LOGGER.trace("Saved {} to examine later", internalName);
         }
+    }
 
-        @Override
-        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+    //records what the class adds to the hash and returns the classes it references
+    private Collection<String> examineClass(TraversalContext context, String internalName) {
+        Examination examination = resolve(context, internalName);
+        if (examination.references == null) {
+            read(context, examination);
         }
-    };
-
-    private AnnotationVisitor _annotationVisitor = new AnnotationVisitor(Opcodes.ASM5) {
-
-        @Override
-        public void visitEnum(String name, String desc, String value) {
-            recordType(Type.getType(desc));
+        if (examination.references == null) {
+            parse(context, examination);
         }
+        return examination.references;
+    }
 
-        @Override
-        public AnnotationVisitor visitAnnotation(String name, String desc) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+    //finds the class and takes what is already known about it, the references are left unset when it has to be read
+    private Examination resolve(TraversalContext context, String internalName) {
+        context.throttle.pace();
+        Examination examination = new Examination(internalName);
+        //unchanged since the last incremental run
+        Collection<String> known = context.references.get(internalName);
+        if (known != null) {
+            examination.references = known;
+            return examination;
         }
-    };
-
-    private FieldVisitor myFieldVisitor = new FieldVisitor(Opcodes.ASM5) {
-
-        @Override
-        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+        MetricsRecorder metrics = context.metrics;
+        //defined while the agent was watching, so digested already
+        LoadedClasses.Entry loaded = _loadedClasses != null ? _loadedClasses.get(internalName) : null;
+        if (loaded != null) {
+            metrics.cacheHit();
+            context.locatedClasses.remove(internalName);
+            context.dependencies.put(internalName, loaded.getDigest());
+            if (context.recordCodeSources || _incremental) {
+                context.codeSources.put(internalName, loaded.getCodeSource());
+            }
+            examination.references = remember(context, internalName, loaded.getReferences());
+            return examination;
         }
-
-        @Override
-        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+        ClassFile classFile = context.locatedClasses.remove(internalName);
+        if (classFile == null) {
+            long start = metrics.now();
+            classFile = context.classSource.find(internalName);
+            metrics.resolved(start);
         }
-    };
-
-    private MethodVisitor _methodVisitor = new MethodVisitor(Opcodes.ASM5) {
-
-        @Override
-        public AnnotationVisitor visitAnnotationDefault() {
-            return _annotationVisitor;
+        if (classFile == null) {
+            context.failedDependencies.add(internalName);
+            examination.references = Collections.emptyList();
+            return examination;
         }
-
-        @Override
-        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+        examination.classFile = classFile;
+        metrics.found(classFile);
+        if (context.watcher != null) {
+            context.watcher.watch(classFile);
         }
-
-        @Override
-        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+        if (context.recordCodeSources || _incremental) {
+            String codeSource = classFile.getCodeSource();
+            context.codeSources.put(internalName, codeSource != null ? new File(codeSource).getName() : "");
         }
-
-        @Override
-        public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+        ArtifactIndex.Entry indexed = _readArtifactIndexes ? artifactIndexOf(context, classFile).get(internalName) : null;
+        if (indexed != null) {
+            metrics.cacheHit();
+            context.dependencies.put(internalName, indexed.getDigest());
+            examination.references = remember(context, internalName, indexed.getReferences());
+            return examination;
         }
-
-        @Override
-        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
-            visitLocals(local);
-            visitLocals(stack);
+        ClassDigestCache.Entry cached = context.cache != null ? context.cache.get(classFile) : null;
+        if (cached != null) {
+            metrics.cacheHit();
+            context.dependencies.put(internalName, cached.getDigest());
+            examination.references = remember(context, internalName, cached.getReferences());
         }
+        return examination;
+    }
 
-        @Override
-        public void visitTypeInsn(int opcode, String type) {
-            recordObjectType(type);
+    private void read(TraversalContext context, Examination examination) {
+        long start = context.metrics.now();
+        try {
+            examination.bytes = examination.classFile.read();
+        } catch (IOException e) {
+            LOGGER.trace("Unable to read {}", examination.classFile.getLocation(), e);
+            context.failedDependencies.add(examination.internalName);
+            examination.references = Collections.emptyList();
+            return;
         }
+        context.metrics.read(start, examination.bytes.length);
+    }
 
-        @Override
-        public void visitFieldInsn(int opcode, String owner, String name, String desc) {
-            recordObjectType(owner);
-            recordType(Type.getType(desc));
+    //visits the class bytes and keeps them or their digest
+    private void parse(TraversalContext context, Examination examination) {
+        MetricsRecorder metrics = context.metrics;
+        String internalName = examination.internalName;
+        long start = metrics.now();
+        ClassReader reader = new ClassReader(examination.bytes);
+        examination.bytes = null;
+        if (_apiOnly) {
+            reader = new ClassReader(DebugStripper.stripToApi(reader));
+        } else if (_stripDebug) {
+            reader = new ClassReader(DebugStripper.strip(reader));
         }
-
-        @Override
-        public void visitMethodInsn(int opcode, String owner, String name, String desc) {
-            recordObjectType(owner);
-            recordType(Type.getMethodType(desc));
+        Collection<String> references = visitClass(reader);
+        metrics.parsed(start);
+        if (usesClassDigests()) {
+            //the bytes are released as soon as the class has been visited
+            start = metrics.now();
+            byte[] digest = hashFunction.hashBytes(reader.b).asBytes();
+            metrics.hashed(start, reader.b.length);
+            context.dependencies.put(internalName, digest);
+            if (context.cache != null) {
+                context.cache.put(examination.classFile, digest, references);
+            }
+        } else {
+            context.dependencies.put(internalName, reader.b);
         }
+        examination.references = remember(context, internalName, references);
+    }
 
-        @Override
-        public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
-            recordObjectType(owner);
-            recordType(Type.getMethodType(desc));
+    private ArtifactIndex artifactIndexOf(TraversalContext context, ClassFile classFile) {
+        String codeSource = classFile.getCodeSource();
+        if (codeSource == null) {
+            return ArtifactIndex.NONE;
+        }
+        ArtifactIndex index = context.artifactIndexes.get(codeSource);
+        if (index == null) {
+            //read outside the map, so other classes are not held up while the jar is opened
+            index = loadArtifactIndex(codeSource);
+            ArtifactIndex raced = context.artifactIndexes.putIfAbsent(codeSource, index);
+            index = raced != null ? raced : index;
         }
+        return index;
+    }
 
-        @Override
-        public void visitMultiANewArrayInsn(String desc, int dims) {
-            recordObjectType(desc);
+    //the index read by an earlier run while the jar has the same size and modification time
+    private ArtifactIndex loadArtifactIndex(String codeSource) {
+        File jar = new File(codeSource);
+        if (!jar.isFile()) {
+            return ArtifactIndex.NONE;
+        }
+        long[] stamp = {jar.length(), jar.lastModified()};
+        StampedArtifactIndex known = _artifactIndexes.get(codeSource);
+        if (known != null && Arrays.equals(known.stamp, stamp)) {
+            return known.index;
         }
+        ArtifactIndex index = ArtifactIndex.read(jar, getCacheNamespace());
+        _artifactIndexes.put(codeSource, new StampedArtifactIndex(stamp, index));
+        return index;
+    }
 
-        @Override
-        public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+    private Collection<String> remember(TraversalContext context, String internalName, Collection<String> references) {
+        if (_incremental || context.batching) {
+            context.references.put(internalName, references);
         }
+        if (context.graphRecorder != null) {
+            context.graphRecorder.record(internalName, references);
+        }
+        return references;
+    }
 
-        @Override
-        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
-            recordObjectType(type);
+    private ClassSource newClassSource() {
+        ClassSource classSource = new LoaderClassSource(getClass().getClassLoader(), _classesLoaders, _classpathIndex,
+                _missingClasses);
+        if (_mapJars) {
+            return new MappedClassSource(classSource);
         }
+        return _readJars ? new JarClassSource(classSource) : classSource;
+    }
 
-        @Override
-        public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+    //returns every class the class references
+    private Collection<String> visitClass(ClassReader reader) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("Examining {}", Type.getObjectType(reader.getClassName()).getClassName());
         }
+        return referencesOf(reader, _scanConstantPool);
+    }
 
-        @Override
-        public void visitLocalVariable(String name, String desc, String signature, Label start, Label end, int index) {
-            recordType(Type.getType(desc));
+    static Collection<String> referencesOf(ClassReader reader, boolean scanConstantPool) {
+        Set<String> references = Sets.newLinkedHashSet();
+        if (scanConstantPool) {
+            new ConstantPoolScanner(references::add).scan(reader);
+        } else {
+            reader.accept(new DependencyVisitor(references::add), 0);
         }
+        references.remove(reader.getClassName());
+        return references;
+    }
 
-        @Override
-        public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index,
-                                                              String desc, boolean visible) {
-            recordType(Type.getType(desc));
-            return _annotationVisitor;
+    private void traverse(TraversalContext context) {
+        LinkedList<String> pendingTraversalList = context.pendingTraversalList;
+        //while the list of non traversed classes is not empty
+        while (!pendingTraversalList.isEmpty()) {
+            examineClass(context, pendingTraversalList.removeFirst())
+                    .forEach(reference -> claimType(context, reference, pendingTraversalList::add));
         }
-    };
+    }
 
-    private void visitLocals(Object[] locals) {
-        if (locals != null) {
-            Arrays.stream(locals)
-                    .filter(local -> local instanceof String)
-                    .forEach(local -> recordType(Type.getObjectType((String) local)));
+    private void traverseInParallel(TraversalContext context) {
+        ForkJoinPool pool = _forkJoinPool != null ? _forkJoinPool : new ForkJoinPool(_parallelism);
+        try {
+            List<String> roots = Lists.newArrayList(context.pendingTraversalList);
+            context.pendingTraversalList.clear();
+            roots.forEach(root -> pool.invoke(new TraversalTask(this, context, null, root)));
+        } finally {
+            if (pool != _forkJoinPool) {
+                pool.shutdown();
+            }
         }
     }
 
-    private void recordObjectType(String... names) {
-        if (names != null) {
-            Arrays.stream(names)
-                    .filter(Objects::nonNull)
-                    .forEach(typeName -> recordType(Type.getObjectType(typeName)));
+    //resolves and reads classes on the io executors and visits them on the parse executor, with at most
+    //_pipelineCapacity classes between the stages, the claims are made here so that every class is examined once
+    private void traverseInPipeline(TraversalContext context) {
+        ExecutorService ownIoExecutor = _ioExecutor == null || _resolveExecutor == null
+                ? Executors.newFixedThreadPool(_pipelineCapacity, new ThreadFactoryBuilder()
+                        .setNameFormat("fangerprint-io-%d")
+                        .setDaemon(true)
+                        .build())
+                : null;
+        Executor resolveExecutor = _resolveExecutor != null ? _resolveExecutor : ownIoExecutor;
+        Executor readExecutor = _ioExecutor != null ? _ioExecutor : ownIoExecutor;
+        Executor parseExecutor = _parseExecutor != null ? _parseExecutor : ForkJoinPool.commonPool();
+        //never full, no more classes are in the pipeline than it holds
+        BlockingQueue<Examination> examined = new ArrayBlockingQueue<>(_pipelineCapacity);
+        LinkedList<String> pending = context.pendingTraversalList;
+        int inFlight = 0;
+        Throwable failure = null;
+        try {
+            while (inFlight > 0 || (failure == null && !pending.isEmpty())) {
+                while (failure == null && inFlight < _pipelineCapacity && !pending.isEmpty()) {
+                    String internalName = pending.removeFirst();
+                    inFlight++;
+                    CompletableFuture.supplyAsync(() -> resolve(context, internalName), resolveExecutor)
+                            .thenApplyAsync(examination -> {
+                                if (examination.references == null) {
+                                    read(context, examination);
+                                }
+                                return examination;
+                            }, readExecutor)
+                            .thenApplyAsync(examination -> {
+                                if (examination.references == null) {
+                                    parse(context, examination);
+                                }
+                                return examination;
+                            }, parseExecutor)
+                            .whenComplete((examination, error) -> examined.add(error == null
+                                    ? examination
+                                    : Examination.failed(internalName, error)));
+                }
+                Examination examination = Uninterruptibles.takeUninterruptibly(examined);
+                inFlight--;
+                if (examination.failure != null) {
+                    //waits for the classes already in the pipeline, they use the class source
+                    failure = failure != null ? failure : examination.failure;
+                } else if (failure == null) {
+                    examination.references.forEach(reference -> claimType(context, reference, pending::add));
+                }
+            }
+        } finally {
+            if (ownIoExecutor != null) {
+                ownIoExecutor.shutdown();
+            }
+        }
+        if (failure != null) {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+            Throwables.throwIfUnchecked(cause);
+            throw new IllegalStateException("Unable to examine classes of " + rootClass, cause);
         }
     }
 
-    private void recordType(Type... types) {
-        Arrays.stream(types)
-                .forEach(this::recordType);
+    //daemon threads at the lowest priority, created when a background fingerprint is first asked for
+    private static final class BackgroundExecutor {
+
+        private static final Executor INSTANCE = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("fangerprint-background-%d")
+                .setDaemon(true)
+                .setPriority(Thread.MIN_PRIORITY)
+                .build());
     }
 
-    private void recordType(Type t) {
-        switch (t.getSort()) {
-            case Type.ARRAY:
-                recordType(t.getElementType());
-                break;
-            case Type.OBJECT:
-                if (!_dependencies.containsKey(t.getInternalName()) && !shouldIgnoreClass(t.getInternalName())) {
-                    ClassReader r;
-                    try {
-                        r = new ClassReader(t.getClassName());
-                        _pendingTraversalList.add(r);
-                        _dependencies.put(t.getInternalName(), r);
-                        LOGGER.trace("Saved {} to examine later", t.getClassName());
-                    } catch (IOException e) {
-                        try {
-                            LOGGER.trace("Attempting to load as a stream");
-                            //try reading the class from a stream
-                            r = new ClassReader(getClassAsStream(t.getInternalName()));
-                            _pendingTraversalList.add(r);
-                            _dependencies.put(t.getInternalName(), r);
-                            LOGGER.trace("Saved {} to examine later", t.getClassName());
-                        } catch (IOException e1) {
-                            LOGGER.trace("Looking for additional classloaders");
-                            if (!_classesLoaders.isEmpty()) {
-                                LOGGER.trace("Found more classloaders");
-                                _classesLoaders
-                                        .forEach(classLoader -> {
-                                            try {
-                                                ClassReader r2 = new ClassReader(classLoader.getResourceAsStream(t.getInternalName() + ".class"));
-                                                _pendingTraversalList.add(r2);
-                                                _dependencies.put(t.getInternalName(), r2);
-                                                LOGGER.trace("Saved {} to examine later", t.getClassName());
-                                            } catch (IOException e2) {
-                                                _failedDependencies.add(t.getInternalName());
-                                            }
-                                        });
-                            } else {
-                                _failedDependencies.add(t.getInternalName());
-                            }
-                        }
-                    }
-                }
-                break;
-            case Type.METHOD:
-                recordType(t.getReturnType());
-                recordType(t.getArgumentTypes());
-                break;
+    //examines one class and forks a task for every class it discovers, completing once all of them have completed,
+    //tasks never leave the pool so they are not meant to be serialized
+    @SuppressWarnings("serial")
+    private static final class TraversalTask extends CountedCompleter<Void> {
+
+        private final Fangerprinter fangerprinter;
+        private final TraversalContext context;
+        private final String internalName;
+
+        private TraversalTask(Fangerprinter fangerprinter, TraversalContext context, CountedCompleter<?> parent,
+                              String internalName) {
+            super(parent);
+            this.fangerprinter = fangerprinter;
+            this.context = context;
+            this.internalName = internalName;
+        }
+
+        @Override
+        public void compute() {
+            List<String> discovered = Lists.newArrayList();
+            fangerprinter.examineClass(context, internalName)
+                    .forEach(reference -> fangerprinter.claimType(context, reference, discovered::add));
+            discovered.forEach(next -> {
+                addToPendingCount(1);
+                new TraversalTask(fangerprinter, context, this, next).fork();
+            });
+            tryComplete();
         }
     }
 
+    //copies of the last finished run, so later runs and callers cannot change each other's view
     public Set<String> getDependencies() {
-        return _dependencies.keySet();
+        return ImmutableSet.copyOf(_lastContext.dependencies.keySet());
     }
 
     public Set<Class> getResolvedDependencies() {
-        if (_resolvedDependencies != null) {
-            return _resolvedDependencies;
+        TraversalContext context = _lastContext;
+        if (context.resolvedDependencies != null) {
+            return context.resolvedDependencies;
         } else {
-            _resolvedDependencies = Sets.newHashSet();
+            Set<Class> resolvedDependencies = Sets.newHashSet();
             ClassLoader loader = getClass().getClassLoader();
-            _dependencies.keySet().forEach(dep -> {
+            context.dependencies.keySet().forEach(dep -> {
                 try {
-                    addResolvedDependency(loader, dep);
+                    addResolvedDependency(resolvedDependencies, loader, dep);
                 } catch (NoClassDefFoundError e) {
                     //try loading from additional class loaders
                     _classesLoaders.forEach(additionalLoader -> {
                         try {
-                            addResolvedDependency(additionalLoader, dep);
+                            addResolvedDependency(resolvedDependencies, additionalLoader, dep);
                         } catch (ClassNotFoundException e1) {
                         } catch (NoClassDefFoundError e2) {
                         }
@@ -308,83 +564,382 @@ public class Fangerprinter {
                 } catch (ClassNotFoundException e) {
                 }
             });
-            return _resolvedDependencies;
+            context.resolvedDependencies = resolvedDependencies;
+            return resolvedDependencies;
         }
     }
 
-    private void addResolvedDependency(ClassLoader loader, String dep) throws ClassNotFoundException {
-        _resolvedDependencies.add(loader.loadClass(convertClassNameToDotNotation(dep)));
+    private void addResolvedDependency(Set<Class> resolvedDependencies, ClassLoader loader, String dep) throws ClassNotFoundException {
+        resolvedDependencies.add(loader.loadClass(convertClassNameToDotNotation(dep)));
+    }
+
+    /**
+     * @return the classes of the last run and the references between them, or null when the graph is not recorded
+     * @see FangerprintBuilder#recordDependencyGraph(boolean)
+     */
+    public DependencyGraph getDependencyGraph() {
+        return _lastContext.graph;
+    }
+
+    /**
+     * Writes the dependency graph of the last run with the digest of every class, for {@link DependencyGraph#map(File)}
+     * to read back without a traversal.
+     *
+     * @throws IllegalStateException when no graph was recorded
+     */
+    public void writeDependencyGraph(File file) throws IOException {
+        TraversalContext context = _lastContext;
+        synchronized (context) {
+            Preconditions.checkState(context.graph != null, "No dependency graph was recorded, see recordDependencyGraph");
+            context.graph.write(file, getCacheNamespace(), internalName -> {
+                byte[] content = context.dependencies.get(internalName);
+                return usesClassDigests() ? content : hashFunction.hashBytes(content).asBytes();
+            });
+        }
     }
 
     public Set<String> getFailedDependencies() {
-        return _failedDependencies;
+        return ImmutableSet.copyOf(_lastContext.failedDependencies);
     }
 
     //Begins traversal
     public String computeHash() {
+        return computeHash(Throttle.NONE);
+    }
 
-        //reset collections;
-        _resolvedDependencies = null;
-        _dependencies.clear();
-        _pendingTraversalList.clear();
-        _failedDependencies.clear();
+    /**
+     * Computes the hash on a low priority background thread, paced by
+     * {@link FangerprintBuilder#withBackgroundRateLimit(double)}.
+     */
+    public CompletableFuture<String> computeHashAsync() {
+        return computeHashAsync(BackgroundExecutor.INSTANCE);
+    }
 
-        //begin traversal
-        recordType(Type.getType(rootClass));
+    /**
+     * Computes the hash on the executor, paced by {@link FangerprintBuilder#withBackgroundRateLimit(double)}.
+     * Cancelling the returned future stops the traversal after the class it is on. When the executor rejects the
+     * computation it runs on the calling thread instead.
+     */
+    public CompletableFuture<String> computeHashAsync(Executor executor) {
+        Throttle throttle = new Throttle(_backgroundRateLimit);
+        CompletableFuture<String> future = new CompletableFuture<String>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                throttle.cancel();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        Runnable computation = () -> {
+            //cancelled before it started
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(computeHash(throttle));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        };
+        try {
+            executor.execute(computation);
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Executor rejected the fingerprint of {}, computing it on the calling thread", rootClass, e);
+            computation.run();
+        }
+        return future;
+    }
 
-        //while the list of non traversed classes is not empty
-        while (!_pendingTraversalList.isEmpty()) {
-            ClassReader current = _pendingTraversalList.removeFirst();
-            LOGGER.trace("Examining {}", Type.getObjectType(current.getClassName()).getClassName());
-            current.accept(_classVisitor, 0);
+    private String computeHash(Throttle throttle) {
+        TraversalContext context = newContext();
+        //only contended in incremental mode, where runs share one context
+        synchronized (context) {
+            Map<String, byte[]> sorted;
+            context.throttle = throttle;
+            try {
+                sorted = resolveDependencies(context);
+            } finally {
+                context.throttle = Throttle.NONE;
+            }
+
+            //hash
+            String hash = hash(context, sorted);
+            notifyListeners(context, Collections.singletonList(rootClass), sorted.size());
+            LOGGER.debug("Softare Hash: {}", hash);
+            LOGGER.debug("Total Number of Dependencies Used: {}", sorted.size());
+            LOGGER.debug("Total Number of Dependencies Excluded: {}", _excludedClasses.size());
+            LOGGER.debug("Total Number of Dependencies Failed: {}", context.failedDependencies.size());
+            return hash;
+        }
+    }
+
+    /**
+     * Traverses like {@link #computeHash()} does, keeping a hash per class, package and code source so that
+     * fingerprints can be compared with {@link MerkleFingerprint#diff(MerkleFingerprint)}.
+     */
+    public MerkleFingerprint computeMerkleFingerprint() {
+        TraversalContext context = newContext();
+        synchronized (context) {
+            context.recordCodeSources = true;
+            Map<String, byte[]> sorted;
+            try {
+                sorted = resolveDependencies(context);
+            } finally {
+                context.recordCodeSources = false;
+            }
+            long start = context.metrics.now();
+            Map<String, HashCode> classDigests = Maps.transformValues(sorted, content -> usesClassDigests()
+                    ? HashCode.fromBytes(content)
+                    : hashFunction.hashBytes(content));
+            MerkleFingerprint fingerprint = MerkleFingerprint.build(hashFunction, classDigests,
+                    internalName -> context.codeSources.getOrDefault(internalName, ""));
+            context.metrics.hashed(start, usesClassDigests() ? 0 : sorted.values().stream().mapToLong(content -> content.length).sum());
+            if (!_incremental) {
+                context.codeSources.clear();
+            }
+            notifyListeners(context, Collections.singletonList(rootClass), sorted.size());
+            LOGGER.debug("Merkle Hash: {}", fingerprint.getHash());
+            return fingerprint;
         }
-        if (_failedDependencies.size() > 0) {
-            LOGGER.trace("Failed to load {} from root class: {}", Arrays.toString(_failedDependencies.toArray()), rootClass.getName());
+    }
+
+    /**
+     * Computes the hash of every root with a single traversal, so classes shared by several roots are read and
+     * visited once. Every hash is the one {@link #computeHash()} gives for that root with the same settings,
+     * {@link #getDependencies()} then holds the classes of every root.
+     *
+     * @return the hash of every root, in the order of the roots
+     */
+    public Map<Class, String> computeHashes(Collection<Class> roots) {
+        Preconditions.checkArgument(!roots.isEmpty(), "no root classes");
+        TraversalContext context = newContext();
+        synchronized (context) {
+            context.batching = true;
+            try {
+                traverseFrom(context, roots);
+                Map<Class, String> hashes = Maps.newLinkedHashMap();
+                roots.forEach(root -> hashes.put(root, hash(context, sortedDependencies(context, root, reachableFrom(context, root)))));
+                notifyListeners(context, roots, context.dependencies.size());
+                LOGGER.debug("Total Number of Dependencies Used for {} roots: {}", hashes.size(), context.dependencies.size());
+                return hashes;
+            } finally {
+                context.batching = false;
+                if (!_incremental) {
+                    context.references.clear();
+                }
+            }
         }
+    }
+
+    private String hash(TraversalContext context, Map<String, byte[]> sorted) {
+        long start = context.metrics.now();
+        long bytes = 0;
         Hasher hasher = hashFunction.newHasher();
-        Map<String, ClassReader> sorted = Maps.newTreeMap();
-        sorted.putAll(_dependencies);
+        for (byte[] content : sorted.values()) {
+            hasher.putBytes(content);
+            bytes += content.length;
+        }
+        String hash = hasher.hash().toString();
+        context.metrics.hashed(start, bytes);
+        return hash;
+    }
+
+    //a listener failing does not fail the fingerprint
+    private void notifyListeners(TraversalContext context, Collection<Class> roots, int dependencyCount) {
+        if (!context.metrics.isEnabled()) {
+            return;
+        }
+        int excludedCount = (int) context.visitedTypes.stream()
+                .filter(internalName -> _ignoreDecisions.getOrDefault(internalName, false))
+                .count();
+        FangerprintMetrics metrics = context.metrics.toMetrics(
+                roots.stream().map(Class::getName).collect(Collectors.toList()),
+                dependencyCount, excludedCount, context.failedDependencies.size());
+        LOGGER.debug("Fingerprint metrics: {}", metrics);
+        for (FangerprintListener listener : _listeners) {
+            try {
+                listener.onFingerprint(metrics);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Fingerprint listener {} failed", listener, e);
+            }
+        }
+    }
+
+    //the classes a traversal from the root alone would have claimed, walked over the remembered references
+    private Set<String> reachableFrom(TraversalContext context, Class root) {
+        Set<String> reachable = Sets.newHashSet();
+        LinkedList<String> pending = Lists.newLinkedList();
+        recordType(Type.getType(root), pending::add);
+        while (!pending.isEmpty()) {
+            String internalName = pending.removeFirst();
+            if (reachable.add(internalName) && !shouldIgnoreClass(context, internalName)) {
+                pending.addAll(context.references.getOrDefault(internalName, Collections.emptyList()));
+            }
+        }
+        return reachable;
+    }
+
+    private TraversalContext newContext() {
+        return _incremental ? _incrementalContext : new TraversalContext();
+    }
+
+    //traverses from the root class and returns what every class adds to the hash, by class name
+    private Map<String, byte[]> resolveDependencies(TraversalContext context) {
+        traverseFrom(context, Collections.singletonList(rootClass));
+        return sortedDependencies(context, rootClass, context.dependencies.keySet());
+    }
+
+    private void traverseFrom(TraversalContext context, Collection<Class> roots) {
+
+        //reset collections;
+        context.metrics = _listeners.isEmpty() ? MetricsRecorder.DISABLED : MetricsRecorder.start();
+        context.resolvedDependencies = null;
+        if (!_incremental || !forgetChangedClasses(context)) {
+            context.dependencies.clear();
+            context.references.clear();
+            context.codeSources.clear();
+            _missingClasses.clear();
+        }
+        context.visitedTypes.clear();
+        context.pendingTraversalList.clear();
+        context.failedDependencies.clear();
+
+        //begin traversal
+        context.cache = _cacheDirectory != null
+                ? new ClassDigestCache(_cacheDirectory, getCacheNamespace(), System.currentTimeMillis())
+                : null;
+        //incremental runs keep the references of every class anyway, and only examine the classes that changed
+        context.graphRecorder = _recordGraph && !_incremental ? new DependencyGraph.Recorder() : null;
+        context.classSource = newClassSource();
+        try {
+            roots.forEach(rootType -> recordType(Type.getType(rootType),
+                    root -> claimType(context, root, context.pendingTraversalList::add)));
+            if (_pipelineCapacity > 0) {
+                traverseInPipeline(context);
+            } else if (_parallelism > 1 || _forkJoinPool != null) {
+                traverseInParallel(context);
+            } else {
+                traverse(context);
+            }
+        } finally {
+            context.classSource.close();
+            context.locatedClasses.clear();
+            context.artifactIndexes.clear();
+        }
+        if (_incremental) {
+            //drops the classes that are no longer reachable
+            context.dependencies.keySet().retainAll(context.visitedTypes);
+            context.references.keySet().retainAll(context.visitedTypes);
+            context.codeSources.keySet().retainAll(context.visitedTypes);
+        }
+        if (_recordGraph) {
+            List<String> rootNames = roots.stream().map(Type::getInternalName).collect(Collectors.toList());
+            context.graph = context.graphRecorder != null
+                    ? context.graphRecorder.build(rootNames, context.dependencies.keySet())
+                    : DependencyGraph.build(rootNames, context.dependencies.keySet(), context.references::get);
+            context.graphRecorder = null;
+        }
+        if (context.cache != null) {
+            context.cache.save();
+        }
+        if (context.failedDependencies.size() > 0) {
+            LOGGER.trace("Failed to load {} from root classes: {}", Arrays.toString(context.failedDependencies.toArray()), roots);
+        }
+        _lastContext = context;
+    }
+
+    private Map<String, byte[]> sortedDependencies(TraversalContext context, Class root, Collection<String> classes) {
+        long start = context.metrics.now();
+        Map<String, byte[]> sorted = Maps.newTreeMap();
+        classes.forEach(internalName -> {
+            byte[] content = context.dependencies.get(internalName);
+            if (content != null) {
+                sorted.put(internalName, content);
+            }
+        });
         //if no dependencies are found
         if (sorted.size() <= 1) {
-            LOGGER.error("Failed to find any dependencies from {}", rootClass.getName());
+            LOGGER.error("Failed to find any dependencies from {}", root.getName());
             throw new RuntimeException("No Dependencies found unable to generate hash");
         }
+        context.metrics.sorted(start);
+        return sorted;
+    }
 
-        //hash
-        sorted.values()
-                .forEach(reader -> hasher.putBytes(reader.b));
-        String hash = hasher.hash().toString();
-        LOGGER.debug("Softare Hash: {}", hash);
-        LOGGER.debug("Total Number of Dependencies Used: {}", sorted.size());
-        LOGGER.debug("Total Number of Dependencies Excluded: {}", _excludedClasses.size());
-        LOGGER.debug("Total Number of Dependencies Failed: {}", _failedDependencies.size());
-        return hash;
+    //forgets the classes that changed since the last run, returns false when everything has to be examined again
+    private boolean forgetChangedClasses(TraversalContext context) {
+        if (_watchUnavailable) {
+            return false;
+        }
+        if (_watcher == null) {
+            try {
+                _watcher = new ClassDirectoryWatcher();
+                context.watcher = _watcher;
+            } catch (IOException e) {
+                LOGGER.warn("Unable to watch class directories, every run examines every class", e);
+                _watchUnavailable = true;
+            }
+            return false;
+        }
+        Set<String> changed = _watcher.pollChanges();
+        if (changed == null) {
+            LOGGER.debug("Lost track of class changes, examining every class again");
+            return false;
+        }
+        LOGGER.debug("Classes changed since the last run: {}", changed.size());
+        //a missing class may be among them, or been added to a directory that is not watched
+        if (!changed.isEmpty()) {
+            _missingClasses.clear();
+        }
+        changed.forEach(internalName -> {
+            context.dependencies.remove(internalName);
+            context.references.remove(internalName);
+            context.codeSources.remove(internalName);
+        });
+        return true;
     }
 
-    //is from bootstrapped classes
-    private boolean isIgnoreLocationSource(String classNamePath) {
-        classNamePath = convertClassNameFromDotNotation(classNamePath);
-        return classNamePath.startsWith("java/") ||
-                classNamePath.startsWith("javax/") ||
-                classNamePath.startsWith("jdk/") ||
-                classNamePath.startsWith("sun/") ||
-                classNamePath.startsWith("com/sun");
+    /**
+     * Stops watching class directories, an incremental fingerprinter examines every class on its next run after this.
+     */
+    @Override
+    public void close() {
+        if (_mbeanName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(_mbeanName);
+            } catch (JMException e) {
+                LOGGER.trace("Unable to unregister {}", _mbeanName, e);
+            }
+        }
+        if (_incrementalContext != null) {
+            synchronized (_incrementalContext) {
+                if (_watcher != null) {
+                    _watcher.close();
+                    _watcher = null;
+                    _incrementalContext.watcher = null;
+                }
+            }
+        }
     }
 
-    private InputStream getClassAsStream(String classname) {
-        return getClass().getClassLoader().getResourceAsStream(classname + ".class");
+    //is from bootstrapped classes
+    private boolean isIgnoreLocationSource(String classNamePath) {
+        return ExclusionMatcher.BOOTSTRAP.matches(classNamePath);
     }
 
-    private void setHashType(HashFunction hashFunction) {
-        this.hashFunction = hashFunction;
+    //a cache only holds digests, so it implies hashing over them
+    private boolean usesClassDigests() {
+        return _streamHashing || _cacheDirectory != null || _loadedClasses != null || _readArtifactIndexes;
     }
 
-    private void setRootClass(Class rootClass) {
-        this.rootClass = rootClass;
+    //cache entries only hold for the hash function and scanner they were made with
+    private String getCacheNamespace() {
+        return namespaceOf(hashFunction, _scanConstantPool, _stripDebug, _apiOnly);
     }
 
-    private void addClassLoader(ClassLoader classLoader) {
-        _classesLoaders.add(classLoader);
+    //everything that changes the digest and references recorded for a class
+    static String namespaceOf(HashFunction hashFunction, boolean scanConstantPool, boolean stripDebug, boolean apiOnly) {
+        return hashFunction + (scanConstantPool ? "/constant-pool" : "/visitor")
+                + (apiOnly ? "/api" : stripDebug ? "/no-debug" : "");
     }
 
     public Set<String> getExcludedClasses() {
@@ -395,14 +950,17 @@ public class Fangerprinter {
         return _excludedJarNames;
     }
 
-    private void initIgnoreJars() {
-        _excludedClassesFromExcludedJar.forEach(klass -> {
+    //worked out once when the fangerprinter is built
+    private Set<String> initIgnoreJars(List<Class> excludedClassesFromExcludedJar, Set<String> excludedJarNames) {
+        Set<String> jarNames = Sets.newHashSet(excludedJarNames);
+        excludedClassesFromExcludedJar.forEach(klass -> {
             try {
-                _excludedJarNames.add(getJarName(klass));
+                jarNames.add(getJarName(klass));
             } catch (Exception e) {
                 LOGGER.trace("Unable to find location of {}", klass.getName());
             }
         });
+        return ImmutableSet.copyOf(jarNames);
     }
 
     private String getJarName(Class klass) {
@@ -414,42 +972,74 @@ public class Fangerprinter {
     }
 
     private String getJarName(URL classUrl) {
+        if (classUrl == null) {
+            return null;
+        }
         return new File(classUrl
                 .getPath())
                 .getName();
     }
 
     private boolean isInIgnoredJar(String jarname) {
-        return _excludedJarNames.contains(jarname);
+        return _jarMatcher.matches(jarname);
     }
 
     private boolean isAnIgnoredClass(String className) {
-        return _classesToExclude.contains(convertClassNameToDotNotation(className));
+        return _classMatcher.matches(className);
     }
 
     private boolean isIgnoreJava(String className) {
         return _excludeJavaBootstrap && isIgnoreLocationSource(className);
     }
 
-    private boolean shouldIgnoreClass(String className) {
-        URL source = getClassSource(className);
-        if (source != null) {
-            if (isInIgnoredJar(getJarName(source))) {
-                LOGGER.trace("Ignoring {} - class was found in jar {} which is in ignore list", className, getJarName(source));
-                _excludedClasses.add(className);
-                return true;
-            } else if (isAnIgnoredClass(className)) {
-                LOGGER.trace("Ignoring {} - class was found in classname ignore list", className);
-                _excludedClasses.add(className);
-                return true;
-            } else return isIgnoreJava(className);
+    //decided once per name, the code source of a name does not change
+    private boolean shouldIgnoreClass(TraversalContext context, String className) {
+        Boolean decided = _ignoreDecisions.get(className);
+        if (decided != null) {
+            return decided;
+        }
+        //decided outside the map, as it may load the class, threads racing on a class come to the same decision
+        long start = context.metrics.now();
+        boolean ignored = isIgnoredClass(context, className);
+        context.metrics.resolved(start);
+        decided = _ignoreDecisions.putIfAbsent(className, ignored);
+        return decided != null ? decided : ignored;
+    }
+
+    //the rules over names go first, the jar of a class is only looked for when there are jar rules
+    private boolean isIgnoredClass(TraversalContext context, String className) {
+        if (isAnIgnoredClass(className)) {
+            LOGGER.trace("Ignoring {} - class was found in classname ignore list", className);
+            _excludedClasses.add(className);
+            return true;
         } else if (isIgnoreJava(className)) {
             LOGGER.trace("Ignoring {} - java classes are ignored", className);
             _excludedClasses.add(className);
             return true;
-        } else {
+        } else if (_jarMatcher.isEmpty()) {
             return false;
         }
+        String source = _resolveFromResources ? getCodeSourceName(context, className) : getJarName(getClassSource(className));
+        if (source != null && isInIgnoredJar(source)) {
+            LOGGER.trace("Ignoring {} - class was found in jar {} which is in ignore list", className, source);
+            _excludedClasses.add(className);
+            return true;
+        }
+        return false;
+    }
+
+    //finds the jar or directory of the class from its resource, without loading it
+    private String getCodeSourceName(TraversalContext context, String className) {
+        if (isIgnoreLocationSource(className)) {
+            return null;
+        }
+        ClassFile classFile = context.classSource.find(className);
+        if (classFile == null || classFile.getCodeSource() == null) {
+            return null;
+        }
+        //saves examining the class from looking it up again
+        context.locatedClasses.put(className, classFile);
+        return new File(classFile.getCodeSource()).getName();
     }
 
     private URL getClassSource(String className) {
@@ -465,7 +1055,7 @@ public class Fangerprinter {
             LOGGER.trace("Cannot find {}", e.getMessage());
         } catch (Exception e) {
             loader = ClassLoader.getSystemClassLoader();
-            while (loader != null) {
+            while (loader != null && source == null) {
                 try {
                     source = loader.loadClass(actualClass).getProtectionDomain().getCodeSource().getLocation();
                 } catch (Exception e2) {
@@ -488,62 +1078,305 @@ public class Fangerprinter {
         return convertClassName(className, true);
     }
 
+    //one class going through the pipeline, done once its references are set
+    private static final class Examination {
 
-    private void addClassToIgnore(Class klass) {
-        _classesToExclude.add(klass.getName());
+        private final String internalName;
+        private ClassFile classFile = null;
+        private byte[] bytes = null;
+        private Collection<String> references = null;
+        private Throwable failure = null;
+
+        private Examination(String internalName) {
+            this.internalName = internalName;
+        }
+
+        private static Examination failed(String internalName, Throwable failure) {
+            Examination examination = new Examination(internalName);
+            examination.failure = failure;
+            return examination;
+        }
     }
 
-    private void addClassToIgnoreJar(Class klass) {
-        _excludedClassesFromExcludedJar.add(klass);
+    private static final class StampedArtifactIndex {
+
+        //the size and modification time of the jar when the index was read
+        private final long[] stamp;
+        private final ArtifactIndex index;
+
+        private StampedArtifactIndex(long[] stamp, ArtifactIndex index) {
+            this.stamp = stamp;
+            this.index = index;
+        }
     }
 
-    private void addJarNameToIgnore(String jarName) {
-        _excludedJarNames.add(jarName);
+    //the state of one traversal
+    private static final class TraversalContext {
+
+        //what each class adds to the hash, its bytes or its digest
+        private final Map<String, byte[]> dependencies = Maps.newConcurrentMap();
+        private final Set<String> visitedTypes = Sets.newConcurrentHashSet();
+        private final Set<String> failedDependencies = Sets.newConcurrentHashSet();
+        private final LinkedList<String> pendingTraversalList = Lists.newLinkedList();
+        private final Map<String, ClassFile> locatedClasses = Maps.newConcurrentMap();
+        //the index of every jar a class was found in, its stamp is checked once per run
+        private final Map<String, ArtifactIndex> artifactIndexes = Maps.newConcurrentMap();
+        //the jar or directory name of every class, only kept while building a merkle fingerprint
+        private final Map<String, String> codeSources = Maps.newConcurrentMap();
+        //the classes every examined class references, kept between incremental runs
+        private final Map<String, Collection<String>> references = Maps.newConcurrentMap();
+        private volatile Set<Class> resolvedDependencies = null;
+        private ClassDigestCache cache = null;
+        private ClassSource classSource = null;
+        private ClassDirectoryWatcher watcher = null;
+        private MetricsRecorder metrics = MetricsRecorder.DISABLED;
+        private volatile Throttle throttle = Throttle.NONE;
+        private boolean recordCodeSources = false;
+        private boolean batching = false;
+        //takes the references of the run by id while it records a dependency graph
+        private DependencyGraph.Recorder graphRecorder = null;
+        private DependencyGraph graph = null;
     }
 
 
     public static final class FangerprintBuilder {
 
-        private Fangerprinter fangerprinter;
+        private final Class rootClass;
+        private HashFunction hashFunction;
+        private final List<ClassLoader> classLoaders = new ArrayList<>();
+        private final List<String> classPatternsToExclude = Lists.newArrayList();
+        private final List<String> jarPatternsToExclude = Lists.newArrayList();
+        private final List<Class> excludedClassesFromExcludedJar = Lists.newArrayList();
+        private final Set<String> excludedJarNames = Sets.newHashSet();
+        private boolean excludeJavaBootstrap = false;
+        private boolean scanConstantPool = false;
+        private boolean stripDebug = false;
+        private boolean apiOnly = false;
+        private int parallelism = 1;
+        private ForkJoinPool forkJoinPool = null;
+        private File cacheDirectory = null;
+        private boolean streamHashing = false;
+        private boolean readJars = false;
+        private boolean mapJars = false;
+        private boolean resolveFromResources = false;
+        private boolean indexClasspath = false;
+        private LoadedClasses loadedClasses = null;
+        private boolean readArtifactIndexes = false;
+        private double backgroundRateLimit = 0;
+        private int pipelineCapacity = 0;
+        private boolean recordGraph = false;
+        private Executor resolveExecutor = null;
+        private Executor ioExecutor = null;
+        private Executor parseExecutor = null;
+        private boolean incremental = false;
+        private final List<FangerprintListener> listeners = Lists.newArrayList();
+        private ObjectName mbeanName = null;
 
         private FangerprintBuilder(Class rootClass) {
-            fangerprinter = new Fangerprinter();
-            fangerprinter.setRootClass(rootClass);
+            this.rootClass = rootClass;
         }
 
         public FangerprintBuilder withClassLoader(ClassLoader classLoader) {
-            fangerprinter.addClassLoader(classLoader);
+            classLoaders.add(classLoader);
             return this;
         }
 
         public FangerprintBuilder withHashType(HashFunction hashFunction) {
-            fangerprinter.setHashType(hashFunction);
+            this.hashFunction = hashFunction;
             return this;
         }
 
         public FangerprintBuilder ignoreJarWithClass(Class klass) {
-            fangerprinter.addClassToIgnoreJar(klass);
+            excludedClassesFromExcludedJar.add(klass);
             return this;
         }
 
         public FangerprintBuilder ignoreJarWithName(String jarName) {
-            fangerprinter.addJarNameToIgnore(jarName);
+            excludedJarNames.add(jarName);
             return this;
         }
 
         public FangerprintBuilder ignoreClass(Class klass) {
-            fangerprinter.addClassToIgnore(klass);
+            classPatternsToExclude.add(klass.getName());
+            return this;
+        }
+
+        //ignores every class of the package and of the packages under it, such as "com.vendor"
+        public FangerprintBuilder ignorePackage(String packageName) {
+            classPatternsToExclude.add(packageName + ".**");
+            return this;
+        }
+
+        //ignores the classes whose name matches the pattern, where * is any part of a package or class name,
+        //** is anything at all and ? is one character, such as "com.vendor.*.internal.**" or "com.vendor.*Impl"
+        public FangerprintBuilder ignoreClassesMatching(String pattern) {
+            classPatternsToExclude.add(pattern);
+            return this;
+        }
+
+        //ignores the classes of every jar whose name matches the pattern, where * and ? are as in
+        //ignoreClassesMatching, such as "vendor-*.jar"
+        public FangerprintBuilder ignoreJarsMatching(String pattern) {
+            jarPatternsToExclude.add(pattern);
             return this;
         }
 
         public FangerprintBuilder ignoreJava(boolean ignore) {
-            fangerprinter._excludeJavaBootstrap = ignore;
+            excludeJavaBootstrap = ignore;
+            return this;
+        }
+
+        //reads referenced types from the constant pool instead of visiting every method body
+        public FangerprintBuilder useConstantPoolScanner(boolean scanConstantPool) {
+            this.scanConstantPool = scanConstantPool;
+            return this;
+        }
+
+        //hashes classes without their debug information and stack map frames, so recompiling the same source with
+        //other debug settings keeps the hash, the hash differs from the one taken over the class files as they are
+        public FangerprintBuilder stripDebugInfo(boolean stripDebug) {
+            this.stripDebug = stripDebug;
+            return this;
+        }
+
+        //hashes only what other classes compile against, the class headers and the public and protected fields,
+        //methods and member classes without any method body, and only follows the classes those reference, so the
+        //hash changes with the api of the closure, this takes precedence over stripDebugInfo
+        public FangerprintBuilder hashApiOnly(boolean apiOnly) {
+            this.apiOnly = apiOnly;
+            return this;
+        }
+
+        //visits classes on a pool of the given size, the hash stays the same as a serial traversal
+        public FangerprintBuilder withParallelism(int parallelism) {
+            Preconditions.checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        //visits classes on the given pool, which is left running after traversal
+        public FangerprintBuilder withForkJoinPool(ForkJoinPool forkJoinPool) {
+            this.forkJoinPool = forkJoinPool;
+            return this;
+        }
+
+        //keeps class digests and references in the directory so unchanged classes are not read again,
+        //the hash is then taken over class digests like withStreamingHash does
+        public FangerprintBuilder withCacheDirectory(File cacheDirectory) {
+            this.cacheDirectory = cacheDirectory;
+            return this;
+        }
+
+        //digests every class as soon as it is visited and hashes the digests in class name order, so class bytes
+        //are not kept until the end, the hash differs from the one over the bytes themselves
+        public FangerprintBuilder withStreamingHash(boolean streamHashing) {
+            this.streamHashing = streamHashing;
+            return this;
+        }
+
+        //reads classes straight from their jars, with a cache only the classes whose entry changed are inflated
+        public FangerprintBuilder useJarClassSource(boolean readJars) {
+            this.readJars = readJars;
+            return this;
+        }
+
+        //reads classes from memory mapped jars, indexing a jar once when its first class is reached,
+        //this takes precedence over useJarClassSource
+        public FangerprintBuilder useMappedClassSource(boolean mapJars) {
+            this.mapJars = mapJars;
+            return this;
+        }
+
+        //finds the jar of a class from its resource instead of loading the class, so no class gets defined
+        public FangerprintBuilder resolveCodeSourceFromResource(boolean resolveFromResources) {
+            this.resolveFromResources = resolveFromResources;
+            return this;
+        }
+
+        //lists every class of the jars and class directories of the class loaders once per run, so finding a
+        //class is a map lookup instead of asking every loader, classes of loaders that cannot be listed are
+        //still asked for once each
+        public FangerprintBuilder useClasspathIndex(boolean indexClasspath) {
+            this.indexClasspath = indexClasspath;
+            return this;
+        }
+
+        //takes the digest and references of the classes the agent saw being defined instead of reading them,
+        //their hash function has to be the one of the fangerprinter, their references are the ones of
+        //useConstantPoolScanner so that has to be set, the hash is then taken over class digests like
+        //withStreamingHash does
+        public FangerprintBuilder useLoadedClasses(LoadedClasses loadedClasses) {
+            this.loadedClasses = loadedClasses;
+            return this;
+        }
+
+        //takes the digest and references of a class from the index the fangerprint maven plugin wrote into its jar,
+        //while the class is the one that was indexed, the hash is then taken over class digests like
+        //withStreamingHash does
+        public FangerprintBuilder useArtifactIndexes(boolean readArtifactIndexes) {
+            this.readArtifactIndexes = readArtifactIndexes;
+            return this;
+        }
+
+        //examines at most that many classes per second in computeHashAsync, so a fingerprint taken in the background
+        //leaves the cpu to the application, computeHash is never limited
+        public FangerprintBuilder withBackgroundRateLimit(double classesPerSecond) {
+            Preconditions.checkArgument(classesPerSecond >= 0, "classesPerSecond must not be negative: %s", classesPerSecond);
+            this.backgroundRateLimit = classesPerSecond;
+            return this;
+        }
+
+        //finds, reads and visits classes in separate stages, so reading classes overlaps with visiting others,
+        //at most capacity classes are between the stages, this takes precedence over withParallelism
+        public FangerprintBuilder withPipeline(int capacity) {
+            Preconditions.checkArgument(capacity > 0, "capacity must be positive: %s", capacity);
+            this.pipelineCapacity = capacity;
+            return this;
+        }
+
+        //the executors of the pipeline stages, by default classes are found and read on capacity threads of their
+        //own and visited on the common pool, a null executor keeps the default
+        public FangerprintBuilder withPipelineExecutors(Executor resolveExecutor, Executor ioExecutor, Executor parseExecutor) {
+            this.resolveExecutor = resolveExecutor;
+            this.ioExecutor = ioExecutor;
+            this.parseExecutor = parseExecutor;
+            return this;
+        }
+
+        //keeps the references between the classes of a run as a DependencyGraph, see getDependencyGraph
+        public FangerprintBuilder recordDependencyGraph(boolean recordGraph) {
+            this.recordGraph = recordGraph;
+            return this;
+        }
+
+        //keeps the dependency graph between runs and watches the class directories it was read from,
+        //so a run only examines the classes that changed and those that became reachable, classes in jars are
+        //assumed not to change, close() stops watching, incremental runs on one instance take turns
+        public FangerprintBuilder incremental(boolean incremental) {
+            this.incremental = incremental;
+            return this;
+        }
+
+        //tells the listener what every fingerprint cost, once it is computed
+        public FangerprintBuilder withListener(FangerprintListener listener) {
+            listeners.add(Preconditions.checkNotNull(listener));
+            return this;
+        }
+
+        //registers a FangerprintStatisticsMXBean under com.stacktrace.yo.fangerprint:type=Fangerprinter,name=<name>
+        //when the fangerprinter is built, close() unregisters it
+        public FangerprintBuilder withMBean(String name) {
+            try {
+                mbeanName = ObjectName.getInstance("com.stacktrace.yo.fangerprint:type=Fangerprinter,name=" + ObjectName.quote(name));
+            } catch (JMException e) {
+                throw new IllegalArgumentException("Invalid MBean name " + name, e);
+            }
             return this;
         }
 
+        //the fangerprinter keeps its own copy of the settings, so the builder can go on to build others
         public Fangerprinter build() {
-            fangerprinter.initIgnoreJars();
-            return fangerprinter;
+            return new Fangerprinter(this);
         }
     }
-}
\ No newline at end of file
+}
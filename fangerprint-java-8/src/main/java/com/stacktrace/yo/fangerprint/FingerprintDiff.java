@@ -0,0 +1,42 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableSortedSet;
+
+import java.util.Set;
+
+/**
+ * The classes, by internal name, that differ between two {@link MerkleFingerprint}s.
+ */
+public final class FingerprintDiff {
+
+    private final Set<String> added;
+    private final Set<String> removed;
+    private final Set<String> changed;
+
+    FingerprintDiff(Set<String> added, Set<String> removed, Set<String> changed) {
+        this.added = ImmutableSortedSet.copyOf(added);
+        this.removed = ImmutableSortedSet.copyOf(removed);
+        this.changed = ImmutableSortedSet.copyOf(changed);
+    }
+
+    public Set<String> getAdded() {
+        return added;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public Set<String> getChanged() {
+        return changed;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "FingerprintDiff{added=" + added + ", removed=" + removed + ", changed=" + changed + "}";
+    }
+}
@@ -0,0 +1,33 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.util.Map;
+
+/**
+ * The hash functions that can be named outside of code, such as in agent arguments or plugin settings.
+ */
+final class HashFunctions {
+
+    //md5 and sha1 are deprecated for security uses, they are kept since fingerprints are checksums and users already
+    //name them in their settings
+    @SuppressWarnings("deprecation")
+    private static final Map<String, HashFunction> BY_NAME = ImmutableMap.of(
+            "md5", Hashing.md5(),
+            "sha1", Hashing.sha1(),
+            "sha256", Hashing.sha256(),
+            "sha512", Hashing.sha512());
+
+    private HashFunctions() {
+    }
+
+    static HashFunction forName(String name) {
+        HashFunction hashFunction = BY_NAME.get(name);
+        if (hashFunction == null) {
+            throw new IllegalArgumentException("Unknown hash " + name + ", expected one of " + BY_NAME.keySet());
+        }
+        return hashFunction;
+    }
+}
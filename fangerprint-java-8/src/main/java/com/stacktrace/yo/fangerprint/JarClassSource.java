@@ -0,0 +1,112 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads classes that live in jars straight from the jar, which is opened once per traversal.
+ * <p>
+ * The central directory already holds the CRC32 and sizes of every entry, so a class can be told unchanged
+ * without being inflated, and is only inflated when it actually has to be read.
+ */
+final class JarClassSource implements ClassSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JarClassSource.class);
+
+    private final ClassSource classSource;
+    private final Map<String, Optional<ZipFile>> archives = Maps.newConcurrentMap();
+
+    /**
+     * @param classSource decides where classes come from, its jar classes are read through this source
+     */
+    JarClassSource(ClassSource classSource) {
+        this.classSource = classSource;
+    }
+
+    @Override
+    public ClassFile find(String internalName) {
+        ClassFile classFile = classSource.find(internalName);
+        if (classFile == null) {
+            return null;
+        }
+        String archivePath = LoaderClassSource.getArchivePath(classFile.getLocation());
+        if (archivePath == null) {
+            return classFile;
+        }
+        Optional<ZipFile> archive = archives.computeIfAbsent(archivePath, JarClassSource::open);
+        ZipEntry entry = archive.map(zip -> zip.getEntry(internalName + ".class")).orElse(null);
+        return entry != null ? new ZipClassFile(classFile, archivePath, archive.get(), entry) : classFile;
+    }
+
+    @Override
+    public void close() {
+        archives.values().forEach(archive -> archive.ifPresent(zip -> {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                LOGGER.trace("Unable to close {}", zip.getName(), e);
+            }
+        }));
+        archives.clear();
+        classSource.close();
+    }
+
+    private static Optional<ZipFile> open(String archivePath) {
+        try {
+            return Optional.of(new ZipFile(archivePath));
+        } catch (IOException e) {
+            LOGGER.trace("Unable to open {}", archivePath, e);
+            return Optional.empty();
+        }
+    }
+
+    private static final class ZipClassFile extends ClassFile {
+
+        private final String archivePath;
+        private final ZipFile zip;
+        private final ZipEntry entry;
+
+        private ZipClassFile(ClassFile classFile, String archivePath, ZipFile zip, ZipEntry entry) {
+            super(classFile.getInternalName(), classFile.getLocation());
+            this.archivePath = archivePath;
+            this.zip = zip;
+            this.entry = entry;
+        }
+
+        @Override
+        String getCodeSource() {
+            return archivePath;
+        }
+
+        @Override
+        long[] getStamp() {
+            if (entry.getCrc() == -1 || entry.getSize() == -1) {
+                return null;
+            }
+            return new long[]{entry.getCrc(), entry.getCompressedSize(), entry.getSize()};
+        }
+
+        @Override
+        byte[] read() throws IOException {
+            try (InputStream in = zip.getInputStream(entry)) {
+                long size = entry.getSize();
+                if (size < 0 || size > Integer.MAX_VALUE) {
+                    return ByteStreams.toByteArray(in);
+                }
+                //inflate straight into an array of the right size
+                byte[] bytes = new byte[(int) size];
+                ByteStreams.readFully(in, bytes);
+                return bytes;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The digest and references of every class the JVM defined while {@link FangerprintAgent} was watching, kept up to
+ * date as classes are defined and redefined.
+ * <p>
+ * When a name is defined by more than one loader the last definition is kept. The references are the ones the
+ * constant pool holds, as with {@link Fangerprinter.FangerprintBuilder#useConstantPoolScanner(boolean)}.
+ * <p>
+ * Classes are digested on the given executor rather than on the thread defining them, reading the digests first
+ * digests whatever is still waiting.
+ */
+public final class LoadedClasses {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadedClasses.class);
+
+    private final HashFunction hashFunction;
+    private final Executor digester;
+    private final Map<String, Entry> classes = new ConcurrentSkipListMap<>();
+    private final Queue<Definition> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    LoadedClasses(HashFunction hashFunction, Executor digester) {
+        this.hashFunction = hashFunction;
+        this.digester = digester;
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    public int size() {
+        digestPending();
+        return classes.size();
+    }
+
+    public Set<String> getClassNames() {
+        digestPending();
+        return ImmutableSet.copyOf(classes.keySet());
+    }
+
+    //hashes the class digests in class name order, as a streaming fangerprinter over the same classes does
+    public String computeHash() {
+        digestPending();
+        Hasher hasher = hashFunction.newHasher();
+        classes.values().forEach(entry -> hasher.putBytes(entry.digest));
+        return hasher.hash().toString();
+    }
+
+    Entry get(String internalName) {
+        digestPending();
+        return classes.get(internalName);
+    }
+
+    //keeps the bytes until they are digested, so the caller must not change them
+    void add(String internalName, byte[] bytes, String codeSource) {
+        pending.add(new Definition(internalName, bytes, codeSource));
+        //one task digests everything queued before it starts, later definitions schedule another
+        if (scheduled.compareAndSet(false, true)) {
+            digester.execute(() -> {
+                scheduled.set(false);
+                digestPending();
+            });
+        }
+    }
+
+    //one thread at a time, so that a class defined twice keeps its last definition
+    private synchronized void digestPending() {
+        Definition definition;
+        while ((definition = pending.poll()) != null) {
+            try {
+                record(definition.internalName, definition.bytes, definition.codeSource);
+            } catch (RuntimeException e) {
+                LOGGER.trace("Unable to digest {}", definition.internalName, e);
+            }
+        }
+    }
+
+    private void record(String internalName, byte[] bytes, String codeSource) {
+        byte[] digest = hashFunction.hashBytes(bytes).asBytes();
+        Set<String> references = Sets.newLinkedHashSet();
+        new ConstantPoolScanner(references::add).scan(new ClassReader(bytes));
+        references.remove(internalName);
+        classes.put(internalName, new Entry(digest, ImmutableSet.copyOf(references), codeSource));
+    }
+
+    private static final class Definition {
+
+        private final String internalName;
+        private final byte[] bytes;
+        private final String codeSource;
+
+        private Definition(String internalName, byte[] bytes, String codeSource) {
+            this.internalName = internalName;
+            this.bytes = bytes;
+            this.codeSource = codeSource;
+        }
+    }
+
+    static final class Entry {
+
+        private final byte[] digest;
+        private final Collection<String> references;
+        private final String codeSource;
+
+        private Entry(byte[] digest, Collection<String> references, String codeSource) {
+            this.digest = digest;
+            this.references = references;
+            this.codeSource = codeSource;
+        }
+
+        byte[] getDigest() {
+            return digest;
+        }
+
+        Collection<String> getReferences() {
+            return references;
+        }
+
+        //the name of the jar or class directory the class was defined from, empty when it is not known
+        String getCodeSource() {
+            return codeSource;
+        }
+    }
+}
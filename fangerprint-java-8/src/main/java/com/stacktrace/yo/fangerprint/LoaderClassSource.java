@@ -0,0 +1,208 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds classes as resources of the system class loader, then of the loader that loaded fangerprint, then of the
+ * additional loaders, where the last one that knows the class wins.
+ * <p>
+ * With an index the jars and class directories of every loader are listed when the first class is looked for, and
+ * only the classes the index cannot answer for are looked for as resources, once each per traversal. The index can be
+ * shared by the sources of every traversal of a fangerprinter, see {@link #indexOf(ClassLoader, List)}.
+ * <p>
+ * The classes none of the loaders have can be remembered across traversals too, so that they are not probed for in
+ * every class directory again, whoever shares the set forgets them when the classes may have changed.
+ */
+final class LoaderClassSource implements ClassSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoaderClassSource.class);
+
+    private final ClassLoader loader;
+    private final List<ClassLoader> additionalLoaders;
+    //jars are only looked at once per traversal
+    private final Map<String, long[]> archiveStamps = Maps.newConcurrentMap();
+    //null without an index
+    private final Supplier<ClasspathIndex> index;
+    //what the loaders said about the classes the index does not know, empty when they do not have it
+    private final Map<String, Optional<URL>> unindexed = Maps.newConcurrentMap();
+    //the classes that were not found, null when they are not remembered
+    private final Set<String> missing;
+
+    LoaderClassSource(ClassLoader loader, List<ClassLoader> additionalLoaders) {
+        this(loader, additionalLoaders, false);
+    }
+
+    LoaderClassSource(ClassLoader loader, List<ClassLoader> additionalLoaders, boolean indexed) {
+        this(loader, additionalLoaders, indexed ? indexOf(loader, additionalLoaders) : null, null);
+    }
+
+    /**
+     * @param index   the index of the loaders, or null to look for every class as a resource
+     * @param missing the classes known not to be found, which the source adds to, or null to look for every class
+     */
+    LoaderClassSource(ClassLoader loader, List<ClassLoader> additionalLoaders, Supplier<ClasspathIndex> index,
+                      Set<String> missing) {
+        this.loader = loader;
+        this.additionalLoaders = additionalLoaders;
+        this.index = index;
+        this.missing = missing;
+    }
+
+    //the index of the classes the source finds, listed when it is first asked for
+    static Supplier<ClasspathIndex> indexOf(ClassLoader loader, List<ClassLoader> additionalLoaders) {
+        return Suppliers.memoize(() -> ClasspathIndex.build(
+                ImmutableList.of(ClassLoader.getSystemClassLoader(), loader), additionalLoaders));
+    }
+
+    @Override
+    public ClassFile find(String internalName) {
+        if (missing != null && missing.contains(internalName)) {
+            return null;
+        }
+        URL location = index != null ? findIndexed(internalName) : findResource(internalName);
+        if (location == null && missing != null) {
+            missing.add(internalName);
+        }
+        return location != null ? new UrlClassFile(internalName, location) : null;
+    }
+
+    private URL findIndexed(String internalName) {
+        ClasspathIndex classpathIndex = index.get();
+        URL location = classpathIndex.find(internalName);
+        if (location != null || classpathIndex.isComplete()) {
+            return location;
+        }
+        return unindexed.computeIfAbsent(internalName, name -> Optional.ofNullable(findResource(name))).orElse(null);
+    }
+
+    private URL findResource(String internalName) {
+        String resource = internalName + ".class";
+        URL location = ClassLoader.getSystemResource(resource);
+        if (location == null) {
+            LOGGER.trace("Attempting to load from {}", loader);
+            location = loader.getResource(resource);
+        }
+        if (location == null) {
+            LOGGER.trace("Looking for additional classloaders");
+            for (ClassLoader classLoader : additionalLoaders) {
+                URL found = classLoader.getResource(resource);
+                if (found != null) {
+                    location = found;
+                }
+            }
+        }
+        return location;
+    }
+
+    @Override
+    public void close() {
+        archiveStamps.clear();
+        unindexed.clear();
+    }
+
+    //the jar path of a jar:file: url, or null
+    static String getArchivePath(URL location) {
+        if (!"jar".equals(location.getProtocol())) {
+            return null;
+        }
+        String path = location.getPath();
+        int separator = path.indexOf("!/");
+        if (separator <= 0 || !path.startsWith("file:")) {
+            return null;
+        }
+        try {
+            return new File(new URL(path.substring(0, separator)).toURI()).getPath();
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            LOGGER.trace("Cannot find the jar of {}", location, e);
+            return null;
+        }
+    }
+
+    private final class UrlClassFile extends ClassFile {
+
+        private String codeSource;
+        private File stamped;
+        private boolean resolved = false;
+
+        private UrlClassFile(String internalName, URL location) {
+            super(internalName, location);
+        }
+
+        @Override
+        String getCodeSource() {
+            resolve();
+            return codeSource;
+        }
+
+        //the size and modification time of the jar, or of the class file itself in a directory
+        @Override
+        long[] getStamp() {
+            resolve();
+            if (stamped == null) {
+                return null;
+            }
+            return codeSource.equals(stamped.getPath())
+                    ? archiveStamps.computeIfAbsent(codeSource, path -> stampOf(stamped))
+                    : stampOf(stamped);
+        }
+
+        private void resolve() {
+            if (resolved) {
+                return;
+            }
+            resolved = true;
+            String archivePath = getArchivePath(getLocation());
+            if (archivePath != null) {
+                codeSource = archivePath;
+                stamped = new File(archivePath);
+            } else if ("file".equals(getLocation().getProtocol())) {
+                try {
+                    File classFile = new File(getLocation().toURI());
+                    String path = classFile.getPath();
+                    int root = path.length() - getInternalName().length() - ".class".length();
+                    codeSource = root > 0 ? path.substring(0, root) : path;
+                    stamped = classFile;
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    LOGGER.trace("Cannot find the code source of {}", getLocation(), e);
+                }
+            }
+        }
+
+        @Override
+        byte[] read() throws IOException {
+            if ("file".equals(getLocation().getProtocol())) {
+                try {
+                    //a single read into an array of the right size
+                    return Files.readAllBytes(Paths.get(getLocation().toURI()));
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    LOGGER.trace("Reading {} as a stream", getLocation(), e);
+                }
+            }
+            try (InputStream in = getLocation().openStream()) {
+                return ByteStreams.toByteArray(in);
+            }
+        }
+    }
+
+    private static long[] stampOf(File file) {
+        return new long[]{file.length(), file.lastModified()};
+    }
+}
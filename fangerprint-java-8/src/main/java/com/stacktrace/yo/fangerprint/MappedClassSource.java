@@ -0,0 +1,313 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads classes that live in jars from a read-only memory mapping of the jar.
+ * <p>
+ * A jar is mapped and its central directory indexed the first time one of its classes is reached, so every
+ * later class from the same jar is a hash lookup and a read from pages that are usually already resident.
+ * Jars keep the classes of a package next to each other, so the first read from a region of a jar loads the
+ * whole region and its neighbours fault in together instead of one at a time.
+ * Entries are stamped like {@link JarClassSource} does, so both share cache entries. Jars that cannot be
+ * mapped, such as zip64 or larger than 2GB ones, and entries this source cannot read, such as zip64 or
+ * otherwise compressed ones, are read through the wrapped source.
+ */
+final class MappedClassSource implements ClassSource {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedClassSource.class);
+
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int CENTRAL_DIRECTORY_ENTRY_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final String CLASS_SUFFIX = ".class";
+    private static final int PREFETCH_SHIFT = 16;
+    //entries keep their real size or offset in a zip64 extra field
+    private static final long ZIP64_MARKER = 0xFFFFFFFFL;
+
+    private final ClassSource classSource;
+    private final Map<String, Optional<MappedArchive>> archives = Maps.newConcurrentMap();
+
+    /**
+     * @param classSource decides where classes come from, its jar classes are read through this source
+     */
+    MappedClassSource(ClassSource classSource) {
+        this.classSource = classSource;
+    }
+
+    @Override
+    public ClassFile find(String internalName) {
+        ClassFile classFile = classSource.find(internalName);
+        if (classFile == null) {
+            return null;
+        }
+        String archivePath = LoaderClassSource.getArchivePath(classFile.getLocation());
+        if (archivePath == null) {
+            return classFile;
+        }
+        Optional<MappedArchive> archive = archives.computeIfAbsent(archivePath, MappedClassSource::map);
+        MappedEntry entry = archive.map(mapped -> mapped.entries.get(internalName)).orElse(null);
+        return entry != null ? new MappedClassFile(classFile, archive.get(), entry) : classFile;
+    }
+
+    //the mappings are released once they are no longer referenced
+    @Override
+    public void close() {
+        archives.values().forEach(archive -> archive.ifPresent(MappedArchive::close));
+        archives.clear();
+        classSource.close();
+    }
+
+    //the channel stays open while the archive is, regions are mapped from it to be loaded
+    private static Optional<MappedArchive> map(String archivePath) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(Paths.get(archivePath), StandardOpenOption.READ);
+            if (channel.size() <= Integer.MAX_VALUE) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                MappedArchive archive = index(archivePath, channel, buffer);
+                if (archive != null) {
+                    return Optional.of(archive);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.trace("Unable to map {}", archivePath, e);
+        }
+        closeQuietly(archivePath, channel);
+        return Optional.empty();
+    }
+
+    private static void closeQuietly(String archivePath, FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.trace("Unable to close {}", archivePath, e);
+            }
+        }
+    }
+
+    //reads the central directory, keeping the class entries only
+    private static MappedArchive index(String archivePath, FileChannel channel, ByteBuffer buffer) {
+        int end = findEndOfCentralDirectory(buffer);
+        if (end < 0) {
+            return null;
+        }
+        int count = buffer.getShort(end + 10) & 0xFFFF;
+        long directoryOffset = buffer.getInt(end + 16) & 0xFFFFFFFFL;
+        //zip64 archives keep their real values elsewhere
+        if (count == 0xFFFF || directoryOffset == ZIP64_MARKER) {
+            return null;
+        }
+        MappedArchive archive = new MappedArchive(archivePath, channel, buffer, count);
+        int position = (int) directoryOffset;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(position) != CENTRAL_DIRECTORY_ENTRY) {
+                return null;
+            }
+            int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+            int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+            int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+            MappedEntry entry = new MappedEntry(
+                    buffer.getShort(position + 10) & 0xFFFF,
+                    buffer.getInt(position + 16) & 0xFFFFFFFFL,
+                    buffer.getInt(position + 20) & 0xFFFFFFFFL,
+                    buffer.getInt(position + 24) & 0xFFFFFFFFL,
+                    buffer.getInt(position + 42) & 0xFFFFFFFFL);
+            //entries left out are read through the wrapped source
+            if (isClassEntry(buffer, position + CENTRAL_DIRECTORY_ENTRY_SIZE, nameLength)
+                    && isReadable(entry, buffer)) {
+                byte[] name = new byte[nameLength - CLASS_SUFFIX.length()];
+                ByteBuffer nameBuffer = buffer.duplicate();
+                nameBuffer.position(position + CENTRAL_DIRECTORY_ENTRY_SIZE);
+                nameBuffer.get(name);
+                archive.entries.put(new String(name, StandardCharsets.UTF_8), entry);
+            }
+            position += CENTRAL_DIRECTORY_ENTRY_SIZE + nameLength + extraLength + commentLength;
+        }
+        return archive;
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer buffer) {
+        int last = buffer.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        //the record is followed by a comment of at most 64k
+        int first = Math.max(0, last - 0xFFFF);
+        for (int position = last; position >= first; position--) {
+            if (buffer.getInt(position) == END_OF_CENTRAL_DIRECTORY) {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isReadable(MappedEntry entry, ByteBuffer buffer) {
+        if (entry.method != STORED && entry.method != DEFLATED) {
+            return false;
+        }
+        if (entry.compressedSize == ZIP64_MARKER || entry.size == ZIP64_MARKER
+                || entry.localHeaderOffset == ZIP64_MARKER) {
+            return false;
+        }
+        return entry.size < Integer.MAX_VALUE
+                && entry.localHeaderOffset + LOCAL_HEADER_SIZE + entry.compressedSize <= buffer.limit();
+    }
+
+    private static boolean isClassEntry(ByteBuffer buffer, int nameStart, int nameLength) {
+        if (nameLength <= CLASS_SUFFIX.length()) {
+            return false;
+        }
+        int suffixStart = nameStart + nameLength - CLASS_SUFFIX.length();
+        for (int i = 0; i < CLASS_SUFFIX.length(); i++) {
+            if (buffer.get(suffixStart + i) != CLASS_SUFFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class MappedArchive {
+
+        private final String path;
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private final Map<String, MappedEntry> entries;
+        //set once a region was loaded, classes are read from several threads
+        private final AtomicIntegerArray prefetched;
+
+        private MappedArchive(String path, FileChannel channel, ByteBuffer buffer, int count) {
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.entries = Maps.newHashMapWithExpectedSize(count);
+            this.prefetched = new AtomicIntegerArray((buffer.limit() >>> PREFETCH_SHIFT) + 1);
+        }
+
+        //slices of a mapping cannot be loaded on java 8, so the region is mapped on its own, the pages are shared
+        private void prefetch(int position) {
+            int region = position >>> PREFETCH_SHIFT;
+            if (!prefetched.compareAndSet(region, 0, 1)) {
+                return;
+            }
+            long start = (long) region << PREFETCH_SHIFT;
+            long length = Math.min(buffer.limit() - start, 1L << PREFETCH_SHIFT);
+            try {
+                channel.map(FileChannel.MapMode.READ_ONLY, start, length).load();
+            } catch (IOException e) {
+                //only costs the read its page faults
+                LOGGER.trace("Unable to load a region of {}", path, e);
+            }
+        }
+
+        private void close() {
+            closeQuietly(path, channel);
+        }
+    }
+
+    private static final class MappedEntry {
+
+        private final int method;
+        private final long crc;
+        private final long compressedSize;
+        private final long size;
+        private final long localHeaderOffset;
+
+        private MappedEntry(int method, long crc, long compressedSize, long size, long localHeaderOffset) {
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    private static final class MappedClassFile extends ClassFile {
+
+        private final MappedArchive archive;
+        private final MappedEntry entry;
+
+        private MappedClassFile(ClassFile classFile, MappedArchive archive, MappedEntry entry) {
+            super(classFile.getInternalName(), classFile.getLocation());
+            this.archive = archive;
+            this.entry = entry;
+        }
+
+        @Override
+        String getCodeSource() {
+            return archive.path;
+        }
+
+        @Override
+        long[] getStamp() {
+            return new long[]{entry.crc, entry.compressedSize, entry.size};
+        }
+
+        @Override
+        byte[] read() throws IOException {
+            ByteBuffer buffer = archive.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            int header = (int) entry.localHeaderOffset;
+            archive.prefetch(header);
+            if (buffer.getInt(header) != LOCAL_HEADER) {
+                throw new IOException("No local header for " + getInternalName() + " in " + archive.path);
+            }
+            int nameLength = buffer.getShort(header + 26) & 0xFFFF;
+            int extraLength = buffer.getShort(header + 28) & 0xFFFF;
+            buffer.position(header + LOCAL_HEADER_SIZE + nameLength + extraLength);
+            byte[] bytes = new byte[(int) entry.size];
+            if (entry.method == STORED) {
+                buffer.get(bytes);
+            } else if (entry.method == DEFLATED) {
+                //java 8 inflaters only take arrays, the extra byte is the dummy input raw inflation wants
+                byte[] compressed = new byte[(int) entry.compressedSize + 1];
+                buffer.get(compressed, 0, (int) entry.compressedSize);
+                inflate(compressed, bytes);
+            } else {
+                throw new IOException("Unsupported compression method " + entry.method + " for " + getInternalName());
+            }
+            return bytes;
+        }
+
+        private void inflate(byte[] compressed, byte[] bytes) throws IOException {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed);
+                int read = 0;
+                while (read < bytes.length && !inflater.finished()) {
+                    int inflated = inflater.inflate(bytes, read, bytes.length - read);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    read += inflated;
+                }
+                if (read != bytes.length) {
+                    throw new IOException("Truncated entry for " + getInternalName() + " in " + archive.path);
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt entry for " + getInternalName() + " in " + archive.path, e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.function.Function;
+
+/**
+ * A fingerprint made of a tree of hashes: one per class, one per package of a code source, one per code source
+ * and one for the whole, so two fingerprints can be compared by only descending into the subtrees that differ.
+ * <p>
+ * Code sources are named by their jar or directory name, not their full path, so fingerprints taken on
+ * different hosts can be compared.
+ */
+public final class MerkleFingerprint {
+
+    private final Node root;
+
+    private MerkleFingerprint(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * @param classDigests the digest of every class by internal name
+     * @param codeSourceOf the code source name of a class
+     */
+    static MerkleFingerprint build(HashFunction hashFunction, Map<String, HashCode> classDigests,
+                                   Function<String, String> codeSourceOf) {
+        Map<String, Map<String, Map<String, HashCode>>> tree = Maps.newTreeMap();
+        classDigests.forEach((internalName, digest) -> tree
+                .computeIfAbsent(codeSourceOf.apply(internalName), codeSource -> Maps.newTreeMap())
+                .computeIfAbsent(getPackageName(internalName), packageName -> Maps.newTreeMap())
+                .put(internalName, digest));
+
+        ImmutableSortedMap.Builder<String, Node> codeSources = ImmutableSortedMap.naturalOrder();
+        tree.forEach((codeSource, packages) -> {
+            ImmutableSortedMap.Builder<String, Node> packageNodes = ImmutableSortedMap.naturalOrder();
+            packages.forEach((packageName, classes) -> {
+                ImmutableSortedMap.Builder<String, Node> classNodes = ImmutableSortedMap.naturalOrder();
+                classes.forEach((internalName, digest) -> classNodes.put(internalName, new Node(digest, null)));
+                packageNodes.put(packageName, Node.of(hashFunction, classNodes.build()));
+            });
+            codeSources.put(codeSource, Node.of(hashFunction, packageNodes.build()));
+        });
+        return new MerkleFingerprint(Node.of(hashFunction, codeSources.build()));
+    }
+
+    public String getHash() {
+        return root.hash.toString();
+    }
+
+    public Set<String> getCodeSources() {
+        return root.children.keySet();
+    }
+
+    /**
+     * @return the hash of every code source by name
+     */
+    public Map<String, String> getCodeSourceHashes() {
+        return Maps.transformValues(root.children, node -> node.hash.toString());
+    }
+
+    /**
+     * @return the hash of every package of the code source by package name, packages use slashes
+     */
+    public Map<String, String> getPackageHashes(String codeSource) {
+        Node node = root.children.get(codeSource);
+        return node == null ? ImmutableSortedMap.of() : Maps.transformValues(node.children, child -> child.hash.toString());
+    }
+
+    /**
+     * @return the classes that changed since the previous fingerprint, a class that only moved to another code
+     * source is not reported
+     */
+    public FingerprintDiff diff(MerkleFingerprint previous) {
+        Map<String, HashCode> added = Maps.newTreeMap();
+        Map<String, HashCode> removed = Maps.newTreeMap();
+        Set<String> changed = Sets.newTreeSet();
+        diff(root, previous.root, added, removed, changed);
+
+        //the same class under another code source or package
+        Sets.newHashSet(Sets.intersection(added.keySet(), removed.keySet())).forEach(internalName -> {
+            if (!added.get(internalName).equals(removed.get(internalName))) {
+                changed.add(internalName);
+            }
+            added.remove(internalName);
+            removed.remove(internalName);
+        });
+        return new FingerprintDiff(added.keySet(), removed.keySet(), changed);
+    }
+
+    private static void diff(Node current, Node previous, Map<String, HashCode> added, Map<String, HashCode> removed,
+                             Set<String> changed) {
+        if (current.hash.equals(previous.hash)) {
+            return;
+        }
+        for (String name : Sets.union(current.children.keySet(), previous.children.keySet())) {
+            Node currentChild = current.children.get(name);
+            Node previousChild = previous.children.get(name);
+            if (previousChild == null) {
+                currentChild.collectLeaves(name, added);
+            } else if (currentChild == null) {
+                previousChild.collectLeaves(name, removed);
+            } else if (!currentChild.hash.equals(previousChild.hash)) {
+                if (currentChild.isLeaf()) {
+                    changed.add(name);
+                } else {
+                    diff(currentChild, previousChild, added, removed, changed);
+                }
+            }
+        }
+    }
+
+    private static String getPackageName(String internalName) {
+        int separator = internalName.lastIndexOf('/');
+        return separator < 0 ? "" : internalName.substring(0, separator);
+    }
+
+    @Override
+    public String toString() {
+        return getHash();
+    }
+
+    private static final class Node {
+
+        private final HashCode hash;
+        private final SortedMap<String, Node> children;
+
+        private Node(HashCode hash, SortedMap<String, Node> children) {
+            this.hash = hash;
+            this.children = children;
+        }
+
+        private static Node of(HashFunction hashFunction, SortedMap<String, Node> children) {
+            Hasher hasher = hashFunction.newHasher();
+            children.forEach((name, child) -> hasher
+                    .putString(name, StandardCharsets.UTF_8)
+                    .putBytes(child.hash.asBytes()));
+            return new Node(hasher.hash(), children);
+        }
+
+        private boolean isLeaf() {
+            return children == null;
+        }
+
+        private void collectLeaves(String name, Map<String, HashCode> leaves) {
+            if (isLeaf()) {
+                leaves.put(name, hash);
+            } else {
+                children.forEach((childName, child) -> child.collectLeaves(childName, leaves));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.Maps;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Adds up the cost of one traversal, from every thread taking part. A disabled recorder does not look at the
+ * clock at all.
+ */
+final class MetricsRecorder {
+
+    static final MetricsRecorder DISABLED = new MetricsRecorder(false);
+
+    private final boolean enabled;
+    private final long started;
+    private final LongAdder resolveNanos = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder sortNanos = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesHashed = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final Map<String, LongAdder> classesByCodeSource = Maps.newConcurrentMap();
+
+    private MetricsRecorder(boolean enabled) {
+        this.enabled = enabled;
+        this.started = enabled ? System.nanoTime() : 0;
+    }
+
+    static MetricsRecorder start() {
+        return new MetricsRecorder(true);
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    long now() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    void resolved(long start) {
+        add(resolveNanos, start);
+    }
+
+    void read(long start, int bytes) {
+        if (enabled) {
+            add(readNanos, start);
+            bytesRead.add(bytes);
+        }
+    }
+
+    void parsed(long start) {
+        add(parseNanos, start);
+    }
+
+    void sorted(long start) {
+        add(sortNanos, start);
+    }
+
+    void hashed(long start, long bytes) {
+        if (enabled) {
+            add(hashNanos, start);
+            bytesHashed.add(bytes);
+        }
+    }
+
+    void cacheHit() {
+        if (enabled) {
+            cacheHits.increment();
+        }
+    }
+
+    void found(ClassFile classFile) {
+        if (enabled) {
+            String codeSource = classFile.getCodeSource();
+            classesByCodeSource.computeIfAbsent(codeSource != null ? new File(codeSource).getName() : "",
+                    name -> new LongAdder()).increment();
+        }
+    }
+
+    FangerprintMetrics toMetrics(List<String> rootClasses, int dependencyCount, int excludedCount, int failedCount) {
+        return new FangerprintMetrics(rootClasses, System.nanoTime() - started,
+                resolveNanos.sum(), readNanos.sum(), parseNanos.sum(), sortNanos.sum(), hashNanos.sum(),
+                bytesRead.sum(), bytesHashed.sum(), cacheHits.sum(),
+                dependencyCount, excludedCount, failedCount,
+                Maps.transformValues(classesByCodeSource, LongAdder::sum));
+    }
+
+    private void add(LongAdder nanos, long start) {
+        if (enabled) {
+            nanos.add(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Paces the classes one traversal examines and stops it once it is cancelled. Every class waits for its turn
+ * before it is examined, so a cancelled traversal stops after the class it is on.
+ */
+final class Throttle {
+
+    static final Throttle NONE = new Throttle(0);
+
+    //null when classes are not rate limited
+    private final RateLimiter rateLimiter;
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param classesPerSecond the most classes examined per second, or 0 for no limit
+     */
+    Throttle(double classesPerSecond) {
+        this.rateLimiter = classesPerSecond > 0 ? RateLimiter.create(classesPerSecond) : null;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    void pace() {
+        if (cancelled) {
+            throw new CancellationException("Fingerprint cancelled");
+        }
+        if (rateLimiter != null) {
+            rateLimiter.acquire();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ArtifactIndexTest {
+
+    private static final String FIRST = "com/stacktrace/yo/fangerprint/ClassFile";
+    private static final String SECOND = "com/stacktrace/yo/fangerprint/ClassSource";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsWhatWasWritten() throws Exception {
+        File classes = writeClasses(FIRST, SECOND);
+        assertThat(ArtifactIndex.write(classes, Hashing.md5(), false, false, false)).isEqualTo(2);
+        File jar = writeJar(classes, new File(folder.getRoot(), "classes.jar"));
+
+        ArtifactIndex index = ArtifactIndex.read(jar, Fangerprinter.namespaceOf(Hashing.md5(), false, false, false));
+
+        byte[] bytes = classBytes(FIRST);
+        assertThat(index.size()).isEqualTo(2);
+        assertThat(index.get(FIRST).getDigest()).isEqualTo(Hashing.md5().hashBytes(bytes).asBytes());
+        assertThat(index.get(FIRST).getReferences())
+                .containsExactlyElementsOf(Fangerprinter.referencesOf(new ClassReader(bytes), false));
+    }
+
+    @Test
+    public void testIgnoresOtherSettingsAndChangedClasses() throws Exception {
+        File classes = writeClasses(FIRST, SECOND);
+        ArtifactIndex.write(classes, Hashing.md5(), false, false, false);
+        //a class changed after the index was written
+        Files.write(new File(classes, SECOND + ".class").toPath(), classBytes(FIRST));
+        File jar = writeJar(classes, new File(folder.getRoot(), "classes.jar"));
+
+        ArtifactIndex index = ArtifactIndex.read(jar, Fangerprinter.namespaceOf(Hashing.md5(), false, false, false));
+
+        assertThat(index.get(FIRST)).isNotNull();
+        assertThat(index.get(SECOND)).isNull();
+        assertThat(ArtifactIndex.read(jar, Fangerprinter.namespaceOf(Hashing.sha256(), false, false, false)).size()).isEqualTo(0);
+        assertThat(ArtifactIndex.read(jar, Fangerprinter.namespaceOf(Hashing.md5(), true, false, false)).size()).isEqualTo(0);
+        assertThat(ArtifactIndex.read(jar, Fangerprinter.namespaceOf(Hashing.md5(), false, true, false)).size()).isEqualTo(0);
+        assertThat(ArtifactIndex.read(jar, Fangerprinter.namespaceOf(Hashing.md5(), false, false, true)).size()).isEqualTo(0);
+    }
+
+    //packages every file of the directory, as the jar plugin does
+    static File writeJar(File directory, File jar) throws Exception {
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(directory.toPath())) {
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (Path file : files) {
+                out.putNextEntry(new ZipEntry(directory.toPath().relativize(file).toString().replace(File.separatorChar, '/')));
+                out.write(Files.readAllBytes(file));
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private File writeClasses(String... internalNames) throws Exception {
+        File classes = folder.newFolder("classes");
+        for (String internalName : internalNames) {
+            File classFile = new File(classes, internalName + ".class");
+            Files.createDirectories(classFile.getParentFile().toPath());
+            Files.write(classFile.toPath(), classBytes(internalName));
+        }
+        return classes;
+    }
+
+    private static byte[] classBytes(String internalName) throws Exception {
+        return Resources.toByteArray(ClassLoader.getSystemResource(internalName + ".class"));
+    }
+}
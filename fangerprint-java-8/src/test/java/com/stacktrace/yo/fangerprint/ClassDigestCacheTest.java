@@ -0,0 +1,124 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ClassDigestCacheTest {
+
+    private static final long NOW = TimeUnit.DAYS.toMillis(20000);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEntriesSurviveANewCache() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        writeClassFile("com/example/Foo");
+
+        ClassDigestCache cache = new ClassDigestCache(cacheDirectory, "md5", NOW);
+        assertThat(cache.get(findClass("com/example/Foo"))).isNull();
+        cache.put(findClass("com/example/Foo"), new byte[]{1, 2, 3}, ImmutableList.of("com/example/Bar"));
+        cache.save();
+
+        ClassDigestCache.Entry entry = new ClassDigestCache(cacheDirectory, "md5", NOW).get(findClass("com/example/Foo"));
+        assertThat(entry).isNotNull();
+        assertThat(entry.getDigest()).containsExactly(1, 2, 3);
+        assertThat(entry.getReferences()).containsExactly("com/example/Bar");
+    }
+
+    @Test
+    public void testChangedClassIsNotFound() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        writeClassFile("com/example/Foo");
+
+        ClassDigestCache cache = new ClassDigestCache(cacheDirectory, "md5", NOW);
+        cache.put(findClass("com/example/Foo"), new byte[]{1, 2, 3}, ImmutableList.of());
+        cache.save();
+
+        Files.write(new File(folder.getRoot(), "classes/com/example/Foo.class").toPath(), new byte[]{(byte) 0xCA, (byte) 0xFE});
+        assertThat(new ClassDigestCache(cacheDirectory, "md5", NOW).get(findClass("com/example/Foo"))).isNull();
+    }
+
+    @Test
+    public void testNamespacesDoNotShareEntries() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        writeClassFile("com/example/Foo");
+
+        ClassDigestCache cache = new ClassDigestCache(cacheDirectory, "md5", NOW);
+        cache.put(findClass("com/example/Foo"), new byte[]{1, 2, 3}, ImmutableList.of());
+        cache.save();
+
+        assertThat(new ClassDigestCache(cacheDirectory, "sha1", NOW).get(findClass("com/example/Foo"))).isNull();
+    }
+
+    @Test
+    public void testUnusedEntriesExpire() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        writeClassFile("com/example/Foo");
+        writeClassFile("com/example/Bar");
+
+        ClassDigestCache cache = new ClassDigestCache(cacheDirectory, "md5", NOW);
+        cache.put(findClass("com/example/Foo"), new byte[]{1, 2, 3}, ImmutableList.of("com/example/Bar"));
+        cache.put(findClass("com/example/Bar"), new byte[]{4, 5, 6}, ImmutableList.of());
+        cache.save();
+
+        //a run of another root only uses Foo, Bar is kept until it was unused for long enough
+        ClassDigestCache other = new ClassDigestCache(cacheDirectory, "md5", NOW + TimeUnit.DAYS.toMillis(2));
+        assertThat(other.get(findClass("com/example/Foo"))).isNotNull();
+        other.save();
+        long expired = NOW + TimeUnit.DAYS.toMillis(ClassDigestCache.MAX_UNUSED_DAYS + 1);
+        ClassDigestCache later = new ClassDigestCache(cacheDirectory, "md5", expired);
+        assertThat(later.get(findClass("com/example/Bar"))).isNotNull();
+        assertThat(later.get(findClass("com/example/Foo"))).isNotNull();
+        later.save();
+
+        //Bar was used at the expired time, Foo two days after the first run
+        ClassDigestCache last = new ClassDigestCache(cacheDirectory, "md5", expired + TimeUnit.DAYS.toMillis(1));
+        assertThat(last.get(findClass("com/example/Foo"))).isNotNull();
+        assertThat(last.get(findClass("com/example/Bar"))).isNotNull();
+    }
+
+    @Test
+    public void testExpiredEntriesAreDropped() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        writeClassFile("com/example/Foo");
+        writeClassFile("com/example/Bar");
+
+        ClassDigestCache cache = new ClassDigestCache(cacheDirectory, "md5", NOW);
+        cache.put(findClass("com/example/Foo"), new byte[]{1, 2, 3}, ImmutableList.of());
+        cache.put(findClass("com/example/Bar"), new byte[]{4, 5, 6}, ImmutableList.of());
+        cache.save();
+
+        long expired = NOW + TimeUnit.DAYS.toMillis(ClassDigestCache.MAX_UNUSED_DAYS + 1);
+        ClassDigestCache later = new ClassDigestCache(cacheDirectory, "md5", expired);
+        assertThat(later.get(findClass("com/example/Foo"))).isNotNull();
+        later.save();
+
+        ClassDigestCache last = new ClassDigestCache(cacheDirectory, "md5", expired);
+        assertThat(last.get(findClass("com/example/Foo"))).isNotNull();
+        assertThat(last.get(findClass("com/example/Bar"))).isNull();
+    }
+
+    private void writeClassFile(String internalName) throws Exception {
+        File classFile = new File(folder.getRoot(), "classes/" + internalName + ".class");
+        classFile.getParentFile().mkdirs();
+        Files.write(classFile.toPath(), new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE});
+    }
+
+    private ClassFile findClass(String internalName) throws Exception {
+        URL classes = new File(folder.getRoot(), "classes").toURI().toURL();
+        ClassLoader loader = new URLClassLoader(new URL[]{classes}, null);
+        return new LoaderClassSource(getClass().getClassLoader(), ImmutableList.of(loader)).find(internalName);
+    }
+}
@@ -0,0 +1,67 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ClassDirectoryWatcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChangesAreSeenAgainAfterAnOverflow() throws Exception {
+        writeClassFile("com/example/Foo");
+        try (ClassDirectoryWatcher watcher = new ClassDirectoryWatcher()) {
+            watcher.watch(findClass("com/example/Foo"));
+
+            //more events than a watch key holds
+            File directory = new File(folder.getRoot(), "classes/com/example");
+            for (int i = 0; i < 1000; i++) {
+                Files.write(new File(directory, "Generated" + i + ".class").toPath(), new byte[]{1});
+            }
+            assertThat(pollUntil(watcher, changed -> changed == null)).isNull();
+
+            writeClassFile("com/example/Foo");
+            assertThat(pollUntil(watcher, changed -> changed != null && changed.contains("com/example/Foo")))
+                    .contains("com/example/Foo");
+        }
+    }
+
+    //events are delivered in the background, so the watcher is polled until it reports what is expected
+    private static Set<String> pollUntil(ClassDirectoryWatcher watcher, Predicate<Set<String>> expected)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        Set<String> changed;
+        do {
+            Thread.sleep(50);
+            changed = watcher.pollChanges();
+        } while (!expected.test(changed) && System.nanoTime() < deadline);
+        return changed;
+    }
+
+    private void writeClassFile(String internalName) throws Exception {
+        File classFile = new File(folder.getRoot(), "classes/" + internalName + ".class");
+        classFile.getParentFile().mkdirs();
+        Files.write(classFile.toPath(), new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE,
+                (byte) System.nanoTime()});
+    }
+
+    private ClassFile findClass(String internalName) throws Exception {
+        URL classes = new File(folder.getRoot(), "classes").toURI().toURL();
+        ClassLoader loader = new URLClassLoader(new URL[]{classes}, null);
+        return new LoaderClassSource(getClass().getClassLoader(), ImmutableList.of(loader)).find(internalName);
+    }
+}
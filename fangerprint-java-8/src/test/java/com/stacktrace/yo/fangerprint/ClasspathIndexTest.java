@@ -0,0 +1,132 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class ClasspathIndexTest {
+
+    private static final byte[] CLASS_BYTES = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFindsClassesOfJarsAndDirectories() throws Exception {
+        File jar = writeJar("first.jar", "com/example/Foo");
+        File directory = folder.newFolder("classes");
+        File classFile = new File(directory, "com/example/Bar.class");
+        Files.createDirectories(classFile.getParentFile().toPath());
+        Files.write(classFile.toPath(), CLASS_BYTES);
+        URLClassLoader loader = newLoader(jar, directory);
+
+        ClasspathIndex index = ClasspathIndex.build(ImmutableList.of(), ImmutableList.of(loader));
+
+        assertThat(index.find("com/example/Foo")).isEqualTo(loader.getResource("com/example/Foo.class"));
+        assertThat(index.find("com/example/Bar")).isEqualTo(loader.getResource("com/example/Bar.class"));
+        assertThat(index.find("com/example/Missing")).isNull();
+    }
+
+    @Test
+    public void testKeepsUpWithClassDirectories() throws Exception {
+        File directory = folder.newFolder("classes");
+        File removed = writeClass(directory, "com/example/Removed");
+        URLClassLoader loader = newLoader(directory);
+        ClasspathIndex index = ClasspathIndex.build(ImmutableList.of(), ImmutableList.of(loader));
+
+        Files.delete(removed.toPath());
+        writeClass(directory, "com/example/Added");
+
+        assertThat(index.find("com/example/Removed")).isNull();
+        assertThat(index.find("com/example/Added")).isEqualTo(loader.getResource("com/example/Added.class"));
+    }
+
+    @Test
+    public void testFollowsLoaderPrecedence() throws Exception {
+        URLClassLoader first = newLoader(writeJar("first.jar", "com/example/Foo"));
+        URLClassLoader second = newLoader(writeJar("second.jar", "com/example/Foo"));
+
+        ClasspathIndex firstWins = ClasspathIndex.build(ImmutableList.of(first, second), ImmutableList.of());
+        ClasspathIndex lastWins = ClasspathIndex.build(ImmutableList.of(), ImmutableList.of(first, second));
+
+        assertThat(firstWins.find("com/example/Foo").getPath()).contains("first.jar");
+        assertThat(lastWins.find("com/example/Foo").getPath()).contains("second.jar");
+    }
+
+    @Test
+    public void testSourceFindsSameClassesWithIndex() throws Exception {
+        URLClassLoader loader = newLoader(writeJar("first.jar", "com/example/Foo"));
+
+        try (ClassSource source = new LoaderClassSource(getClass().getClassLoader(), ImmutableList.of(loader));
+             ClassSource indexed = new LoaderClassSource(getClass().getClassLoader(), ImmutableList.of(loader), true)) {
+            for (String name : ImmutableList.of("com/example/Foo", "java/lang/Object", ClasspathIndexTest.class.getName().replace('.', '/'))) {
+                assertThat(indexed.find(name).getLocation()).isEqualTo(source.find(name).getLocation());
+            }
+            assertThat(indexed.find("com/example/Missing")).isNull();
+        }
+    }
+
+    @Test
+    public void testRemembersMissingClassesUntilForgotten() throws Exception {
+        File directory = folder.newFolder("classes");
+        URLClassLoader loader = newLoader(directory);
+        Set<String> missing = Sets.newConcurrentHashSet();
+        ClassLoader parent = getClass().getClassLoader();
+        Supplier<ClasspathIndex> index = LoaderClassSource.indexOf(parent, ImmutableList.of(loader));
+
+        try (ClassSource source = new LoaderClassSource(parent, ImmutableList.of(loader), index, missing)) {
+            assertThat(source.find("com/example/Added")).isNull();
+        }
+        assertThat(missing).containsExactly("com/example/Added");
+        writeClass(directory, "com/example/Added");
+
+        //the directories are not probed again for a class remembered as missing
+        try (ClassSource source = new LoaderClassSource(parent, ImmutableList.of(loader), index, missing)) {
+            assertThat(source.find("com/example/Added")).isNull();
+            missing.clear();
+            assertThat(source.find("com/example/Added").getLocation())
+                    .isEqualTo(loader.getResource("com/example/Added.class"));
+        }
+        assertThat(missing).isEmpty();
+    }
+
+    private URLClassLoader newLoader(File... files) throws Exception {
+        URL[] urls = new URL[files.length];
+        for (int i = 0; i < files.length; i++) {
+            urls[i] = files[i].toURI().toURL();
+        }
+        return new URLClassLoader(urls, null);
+    }
+
+    private File writeClass(File directory, String internalName) throws Exception {
+        File classFile = new File(directory, internalName + ".class");
+        Files.createDirectories(classFile.getParentFile().toPath());
+        Files.write(classFile.toPath(), CLASS_BYTES);
+        return classFile;
+    }
+
+    private File writeJar(String name, String internalName) throws Exception {
+        File jar = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(internalName + ".class"));
+            out.write(CLASS_BYTES);
+            out.closeEntry();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,129 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DependencyGraphTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testIdsFollowNameOrder() throws Exception {
+        Map<String, ImmutableList<String>> references = ImmutableMap.of(
+                "c/Three", ImmutableList.of("a/One"),
+                "a/One", ImmutableList.of("b/Two", "c/Three"),
+                "b/Two", ImmutableList.of());
+        DependencyGraph graph = DependencyGraph.build(ImmutableList.of(), references.keySet(), references::get);
+
+        assertThat(graph.size()).isEqualTo(3);
+        assertThat(graph.nameOf(0)).isEqualTo("a/One");
+        assertThat(graph.idOf("c/Three")).isEqualTo(2);
+        assertThat(graph.idOf("d/Missing")).isEqualTo(-1);
+        assertThat(graph.getReferences(0)).containsExactly(1, 2);
+        assertThat(graph.getReferences("c/Three")).containsExactly("a/One");
+        assertThat(graph.getReferenceCount(1)).isEqualTo(0);
+        assertThat(graph.getEdgeCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testAffectedByWalksReferrers() throws Exception {
+        Map<String, ImmutableList<String>> references = ImmutableMap.of(
+                "app/First", ImmutableList.of("lib/Shared", "lib/OnlyFirst"),
+                "app/Second", ImmutableList.of("lib/Shared"),
+                "lib/Shared", ImmutableList.of("lib/Leaf"),
+                "lib/OnlyFirst", ImmutableList.of(),
+                "lib/Leaf", ImmutableList.of());
+        DependencyGraph graph = DependencyGraph.build(ImmutableList.of("app/First", "app/Second"),
+                references.keySet(), references::get);
+
+        assertThat(graph.getRoots()).containsExactly("app/First", "app/Second");
+        assertThat(graph.getReferrers("lib/Shared")).containsExactly("app/First", "app/Second");
+        assertThat(graph.affectedBy(ImmutableList.of("lib/Leaf")).getRoots()).containsExactly("app/First", "app/Second");
+        assertThat(graph.affectedBy(ImmutableList.of("lib/Leaf")).getClasses())
+                .containsExactly("app/First", "app/Second", "lib/Leaf", "lib/Shared");
+        assertThat(graph.affectedBy(ImmutableList.of("lib/OnlyFirst")).getRoots()).containsExactly("app/First");
+        assertThat(graph.affectedBy(ImmutableList.of("app/Second")).getClasses()).containsExactly("app/Second");
+    }
+
+    @Test
+    public void testRecorderBuildsTheSameGraph() throws Exception {
+        Map<String, ImmutableList<String>> references = ImmutableMap.of(
+                "app/First", ImmutableList.of("lib/Shared", "java/lang/Object", "app/First"),
+                "app/Second", ImmutableList.of("lib/Shared", "lib/Shared"),
+                "lib/Shared", ImmutableList.of("lib/Leaf", "lib/Missing"),
+                "lib/Leaf", ImmutableList.of());
+        DependencyGraph.Recorder recorder = new DependencyGraph.Recorder();
+        //recorded in another order than the names, the leaf without any references
+        recorder.record("lib/Shared", references.get("lib/Shared"));
+        recorder.record("app/Second", references.get("app/Second"));
+        recorder.record("app/First", references.get("app/First"));
+        ImmutableList<String> roots = ImmutableList.of("app/First", "app/Second");
+
+        DependencyGraph recorded = recorder.build(roots, references.keySet());
+        DependencyGraph built = DependencyGraph.build(roots, references.keySet(), references::get);
+
+        assertThat(recorded.size()).isEqualTo(built.size());
+        assertThat(recorded.getEdgeCount()).isEqualTo(built.getEdgeCount());
+        for (int id = 0; id < built.size(); id++) {
+            assertThat(recorded.nameOf(id)).isEqualTo(built.nameOf(id));
+            assertThat(recorded.getReferences(id)).isEqualTo(built.getReferences(id));
+            assertThat(recorded.getReferrers(id)).isEqualTo(built.getReferrers(id));
+        }
+        assertThat(recorded.getRoots()).isEqualTo(built.getRoots());
+    }
+
+    @Test
+    public void testDropsReferencesOutsideTheGraph() throws Exception {
+        Map<String, ImmutableList<String>> references = ImmutableMap.of(
+                "a/One", ImmutableList.of("java/lang/Object", "b/Two", "b/Two", "a/One"),
+                "b/Two", ImmutableList.of("java/lang/String"));
+        DependencyGraph graph = DependencyGraph.build(ImmutableList.of(), references.keySet(), references::get);
+
+        assertThat(graph.getReferences("a/One")).containsExactly("b/Two");
+        assertThat(graph.getReferences("b/Two")).isEmpty();
+        assertThat(graph.getEdgeCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMappedGraphAnswersLikeTheBuiltOne() throws Exception {
+        Map<String, ImmutableList<String>> references = ImmutableMap.of(
+                "app/First", ImmutableList.of("lib/Shared", "lib/\u00dcn\u00efcode"),
+                "app/Second", ImmutableList.of("lib/Shared"),
+                "lib/Shared", ImmutableList.of("lib/Leaf"),
+                "lib/\u00dcn\u00efcode", ImmutableList.of(),
+                "lib/Leaf", ImmutableList.of());
+        DependencyGraph graph = DependencyGraph.build(ImmutableList.of("app/First", "app/Second"),
+                references.keySet(), references::get);
+        File file = new File(folder.getRoot(), "graph.bin");
+        graph.write(file, "test", name -> Hashing.md5().hashString(name, StandardCharsets.UTF_8).asBytes());
+
+        DependencyGraph mapped = DependencyGraph.map(file);
+        assertThat(mapped.size()).isEqualTo(graph.size());
+        assertThat(mapped.getEdgeCount()).isEqualTo(graph.getEdgeCount());
+        assertThat(mapped.getDigestNamespace()).isEqualTo("test");
+        for (int id = 0; id < graph.size(); id++) {
+            String name = graph.nameOf(id);
+            assertThat(mapped.nameOf(id)).isEqualTo(name);
+            assertThat(mapped.idOf(name)).isEqualTo(id);
+            assertThat(mapped.getReferences(id)).isEqualTo(graph.getReferences(id));
+            assertThat(mapped.getReferrers(id)).isEqualTo(graph.getReferrers(id));
+            assertThat(mapped.getDigest(id)).isEqualTo(Hashing.md5().hashString(name, StandardCharsets.UTF_8).asBytes());
+        }
+        assertThat(mapped.idOf("lib/Missing")).isEqualTo(-1);
+        assertThat(mapped.idOf("lib/\u00dc")).isEqualTo(-1);
+        assertThat(mapped.getRoots()).isEqualTo(graph.getRoots());
+        assertThat(mapped.affectedBy(ImmutableList.of("lib/Leaf")).getRoots()).containsExactly("app/First", "app/Second");
+        assertThat(graph.getDigest(0)).isNull();
+    }
+}
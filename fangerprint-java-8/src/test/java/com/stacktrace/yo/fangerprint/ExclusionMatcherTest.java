@@ -0,0 +1,89 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExclusionMatcherTest {
+
+    @Test
+    public void testExactNamesMatchOnlyThemselves() throws Exception {
+        ExclusionMatcher matcher = ExclusionMatcher.compile(ImmutableList.of("a/b/One", "a/b/Two"));
+
+        assertThat(matcher.matches("a/b/One")).isTrue();
+        assertThat(matcher.matches("a/b/Two")).isTrue();
+        assertThat(matcher.matches("a/b/On")).isFalse();
+        assertThat(matcher.matches("a/b/One$Inner")).isFalse();
+        assertThat(matcher.matches("a/b/Three")).isFalse();
+    }
+
+    @Test
+    public void testWildcards() throws Exception {
+        ExclusionMatcher segment = ExclusionMatcher.compile(ImmutableList.of("a/*/One"));
+        ExclusionMatcher any = ExclusionMatcher.compile(ImmutableList.of("a/**/One"));
+        ExclusionMatcher character = ExclusionMatcher.compile(ImmutableList.of("a/On?"));
+
+        assertThat(segment.matches("a/b/One")).isTrue();
+        assertThat(segment.matches("a//One")).isTrue();
+        assertThat(segment.matches("a/b/c/One")).isFalse();
+        assertThat(any.matches("a/b/c/One")).isTrue();
+        assertThat(any.matches("a/b/c/Two")).isFalse();
+        assertThat(character.matches("a/One")).isTrue();
+        assertThat(character.matches("a/On")).isFalse();
+        assertThat(character.matches("a/On/")).isFalse();
+    }
+
+    @Test
+    public void testEmptyMatcherMatchesNothing() throws Exception {
+        ExclusionMatcher matcher = ExclusionMatcher.compile(ImmutableList.of());
+
+        assertThat(matcher.isEmpty()).isTrue();
+        assertThat(matcher.matches("")).isFalse();
+        assertThat(matcher.matches("a/b/One")).isFalse();
+    }
+
+    @Test
+    public void testBootstrapPackages() throws Exception {
+        assertThat(ExclusionMatcher.BOOTSTRAP.matches("java/lang/Object")).isTrue();
+        assertThat(ExclusionMatcher.BOOTSTRAP.matches("javax/management/ObjectName")).isTrue();
+        assertThat(ExclusionMatcher.BOOTSTRAP.matches("sun/misc/Unsafe")).isTrue();
+        assertThat(ExclusionMatcher.BOOTSTRAP.matches("com/sun/management/ThreadMXBean")).isTrue();
+        assertThat(ExclusionMatcher.BOOTSTRAP.matches("com/sunny/Thing")).isTrue();
+        assertThat(ExclusionMatcher.BOOTSTRAP.matches("javafoo/Thing")).isFalse();
+        assertThat(ExclusionMatcher.BOOTSTRAP.matches("com/google/common/hash/Hasher")).isFalse();
+    }
+
+    @Test
+    public void testNamesAndPatternsTogether() throws Exception {
+        ExclusionMatcher matcher = ExclusionMatcher.compile(ImmutableList.of(
+                "com/vendor/Api", "com/vendor/*Impl", "com/vendor/internal/**", "guava-*.jar"));
+
+        assertThat(matcher.matches("com/vendor/Api")).isTrue();
+        assertThat(matcher.matches("com/vendor/ApiImpl")).isTrue();
+        assertThat(matcher.matches("com/vendor/internal/deep/Thing")).isTrue();
+        assertThat(matcher.matches("guava-22.0.jar")).isTrue();
+        assertThat(matcher.matches("com/vendor/Other")).isFalse();
+        assertThat(matcher.matches("com/vendor/sub/ApiImpl")).isFalse();
+    }
+
+    @Test
+    public void testManyNamesAndPackages() throws Exception {
+        List<String> patterns = Lists.newArrayList();
+        for (int i = 0; i < 5000; i++) {
+            patterns.add("com/vendor/p" + (i % 50) + "/Class" + i);
+        }
+        for (int i = 0; i < 200; i++) {
+            patterns.add("org/library" + i + "/**");
+        }
+        ExclusionMatcher matcher = ExclusionMatcher.compile(patterns);
+
+        assertThat(matcher.matches("com/vendor/p7/Class4957")).isTrue();
+        assertThat(matcher.matches("com/vendor/p7/Class4958")).isFalse();
+        assertThat(matcher.matches("org/library199/deep/Thing")).isTrue();
+        assertThat(matcher.matches("org/library200/Thing")).isFalse();
+    }
+}
@@ -0,0 +1,92 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+import org.junit.Test;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+public class FangerprintAgentTest {
+
+    @Test
+    public void testLoadedClassesGiveSameHashWithoutReading() throws Exception {
+        AtomicReference<ClassFileTransformer> transformer = new AtomicReference<>();
+        Instrumentation instrumentation = (Instrumentation) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class[]{Instrumentation.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("addTransformer")) {
+                        transformer.set((ClassFileTransformer) args[0]);
+                    }
+                    return method.getReturnType() == boolean.class ? false : null;
+                });
+        LoadedClasses loadedClasses = FangerprintAgent.install(instrumentation, Hashing.md5(), false);
+        assertThat(FangerprintAgent.getLoadedClasses()).isSameAs(loadedClasses);
+
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .useConstantPoolScanner(true)
+                .withStreamingHash(true)
+                .build();
+        String hash = fangerprinter.computeHash();
+        //the JVM hands the transformer the bytes of every class it defines
+        for (String internalName : fangerprinter.getDependencies()) {
+            byte[] bytes = Resources.toByteArray(ClassLoader.getSystemResource(internalName + ".class"));
+            assertThat(transformer.get().transform(null, internalName, null, null, bytes)).isNull();
+        }
+
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .useConstantPoolScanner(true)
+                .useLoadedClasses(loadedClasses)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(hash);
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+        assertThat(loadedClasses.getClassNames()).containsAll(fangerprinter.getDependencies());
+        assertThatThrownBy(() -> Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.sha256())
+                .useLoadedClasses(loadedClasses)
+                .build())
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .useLoadedClasses(loadedClasses)
+                .build())
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("constant pool");
+    }
+
+    @Test
+    public void testClassesAreDigestedOnTheExecutor() throws Exception {
+        List<Runnable> tasks = new CopyOnWriteArrayList<>();
+        LoadedClasses loadedClasses = new LoadedClasses(Hashing.md5(), tasks::add);
+        String internalName = Fangerprinter.class.getName().replace('.', '/');
+        byte[] bytes = Resources.toByteArray(ClassLoader.getSystemResource(internalName + ".class"));
+
+        loadedClasses.add(internalName, bytes, "");
+        loadedClasses.add("broken/Class", new byte[]{1, 2, 3}, "");
+        //one task digests both, the broken class is left out rather than failing the thread defining it
+        assertThat(tasks).hasSize(1);
+        Thread digester = new Thread(tasks.get(0));
+        digester.start();
+        digester.join();
+        assertThat(loadedClasses.getClassNames()).containsExactly(internalName);
+        assertThat(loadedClasses.get(internalName).getDigest()).isEqualTo(Hashing.md5().hashBytes(bytes).asBytes());
+
+        //reading digests whatever is still queued
+        loadedClasses.add(internalName, new byte[0], "");
+        loadedClasses.add(internalName, bytes, "other.jar");
+        assertThat(tasks).hasSize(2);
+        assertThat(loadedClasses.get(internalName).getCodeSource()).isEqualTo("other.jar");
+    }
+}
@@ -1,29 +1,56 @@
 package com.stacktrace.yo.fangerprint;
 
+import com.google.common.base.Splitter;
+import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.Type;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.tools.JavaCompiler;
 import javax.tools.ToolProvider;
 import java.io.File;
+import java.lang.management.ManagementFactory;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.net.URLStreamHandlerFactory;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 
 public class FangerprinterTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private static Class FIRST_TEST_CLASS;
     private static Class SECOND_TEST_CLASS;
     private static Class THIRD_TEST_CLASS;
@@ -259,6 +286,38 @@ public class FangerprinterTest {
         assertThat(excludedClass).isEqualTo("com/google/common/hash/Hasher");
     }
 
+    @Test
+    public void testIgnorePackage() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignorePackage("com.google.common.collect")
+                .build();
+        fangerprinter.computeHash();
+
+        assertThat(fangerprinter.getExcludedClasses()).isNotEmpty();
+        assertThat(fangerprinter.getExcludedClasses().stream()
+                .allMatch(name -> name.startsWith("com/google/common/collect/"))).isTrue();
+        assertThat(fangerprinter.getDependencies().stream()
+                .noneMatch(name -> name.startsWith("com/google/common/collect/"))).isTrue();
+        assertThat(fangerprinter.getDependencies().stream()
+                .anyMatch(name -> name.startsWith("com/google/common/hash/"))).isTrue();
+    }
+
+    @Test
+    public void testIgnoreJarsMatchingExcludesSameClassesAsJarName() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJarWithClass(Hasher.class)
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJarsMatching("guava-*.jar")
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter2.getExcludedClasses()).isEqualTo(fangerprinter.getExcludedClasses());
+    }
+
     @Test
     public void testIgnoreJava() throws Exception {
 
@@ -273,11 +332,725 @@ public class FangerprinterTest {
                 .build();
         fangerprinter2.computeHash();
 
-        assertThat(fangerprinter.getExcludedClasses().size()).isEqualTo(0);
-        assertThat(fangerprinter2.getExcludedClasses().size()).isEqualTo(179);
+        assertThat(fangerprinter.getExcludedClasses()).isEmpty();
+        assertThat(fangerprinter.getDependencies()).contains("java/lang/Object");
+        //the jdk classes are excluded where they are reached and are not traversed, whatever the count is
+        assertThat(fangerprinter2.getExcludedClasses()).contains("java/lang/Object", "java/lang/String");
+        Set<String> reached = new HashSet<>(fangerprinter.getDependencies());
+        reached.addAll(fangerprinter.getFailedDependencies());
+        assertThat(reached).containsAll(fangerprinter2.getExcludedClasses());
+        assertThat(fangerprinter.getDependencies()).containsAll(fangerprinter2.getDependencies());
+        assertThat(fangerprinter2.getDependencies()).doesNotContainAnyElementsOf(fangerprinter2.getExcludedClasses());
+        assertThat(fangerprinter2.getDependencies().stream().filter(name -> name.startsWith("java/")).count())
+                .isEqualTo(0);
+    }
+
+    @Test
+    public void testConstantPoolScannerFindsSameDependencies() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                .withHashType(Hashing.md5())
+                .withClassLoader(FIRST_TEST_CLASSLOADER)
+                .ignoreJava(true)
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                .withHashType(Hashing.md5())
+                .withClassLoader(FIRST_TEST_CLASSLOADER)
+                .ignoreJava(true)
+                .useConstantPoolScanner(true)
+                .build();
+        String hash = fangerprinter.computeHash();
+        String hash2 = fangerprinter2.computeHash();
+
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+        assertThat(hash2).isEqualTo(hash);
+    }
+
+    @Test
+    public void testConstantPoolScannerFindsAllDependenciesOfLibrary() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .useConstantPoolScanner(true)
+                .build();
+        fangerprinter.computeHash();
+        fangerprinter2.computeHash();
+
+        //the constant pool also holds class literals and invokedynamic bootstrap types the visitor never reports
+        assertThat(fangerprinter2.getDependencies()).containsAll(fangerprinter.getDependencies());
+    }
+
+    @Test
+    public void testDescriptorsBreakDownLikeTypes() throws Exception {
+        String[] descriptors = {"I", "Ljava/lang/String;", "[[Ljava/util/Map$Entry;", "()V",
+                "(I[Ljava/lang/Object;JLjava/util/List;)Ljava/util/Map;", "([[I)[Ljava/lang/Long;"};
+        for (String descriptor : descriptors) {
+            List<String> expected = new ArrayList<>();
+            Fangerprinter.recordType(Type.getType(descriptor), expected::add);
+            List<String> recorded = new ArrayList<>();
+            Fangerprinter.recordDescriptor(descriptor, recorded::add);
+            assertThat(recorded).as(descriptor).isEqualTo(expected);
+        }
+        List<String> recorded = new ArrayList<>();
+        Fangerprinter.recordObjectType("java/lang/String", recorded::add);
+        Fangerprinter.recordObjectType("[Ljava/lang/Integer;", recorded::add);
+        assertThat(recorded).containsExactly("java/lang/String", "java/lang/Integer");
+    }
+
+    @Test
+    public void testParallelTraversalGeneratesSameHash() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withParallelism(4)
+                .build();
+        String hash = fangerprinter.computeHash();
+        String hash2 = fangerprinter2.computeHash();
+
+        assertThat(hash2).isEqualTo(hash);
+        assertThat(hash2).isEqualTo(fangerprinter2.computeHash());
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+        assertThat(fangerprinter2.getExcludedClasses()).isEqualTo(fangerprinter.getExcludedClasses());
+    }
+
+    @Test
+    public void testParallelTraversalOnSuppliedPool() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                .withHashType(Hashing.md5())
+                .withClassLoader(FIRST_TEST_CLASSLOADER)
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                .withHashType(Hashing.md5())
+                .withClassLoader(FIRST_TEST_CLASSLOADER)
+                .withForkJoinPool(pool)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(pool.isShutdown()).isFalse();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testPipelineGeneratesSameHash() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withPipeline(8)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+        assertThat(fangerprinter2.getFailedDependencies()).isEqualTo(fangerprinter.getFailedDependencies());
+    }
+
+    @Test
+    public void testPipelineOnSuppliedExecutors() throws Exception {
+        ExecutorService io = Executors.newFixedThreadPool(4);
+        ExecutorService parse = Executors.newSingleThreadExecutor();
+        try {
+            Fangerprinter fangerprinter = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                    .withHashType(Hashing.md5())
+                    .withClassLoader(FIRST_TEST_CLASSLOADER)
+                    .build();
+            Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                    .withHashType(Hashing.md5())
+                    .withClassLoader(FIRST_TEST_CLASSLOADER)
+                    .withPipeline(2)
+                    .withPipelineExecutors(io, io, parse)
+                    .build();
+
+            assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+            assertThat(io.isShutdown()).isFalse();
+        } finally {
+            io.shutdown();
+            parse.shutdown();
+        }
+    }
+
+    @Test
+    public void testCacheDirectoryReusesDigests() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withCacheDirectory(cacheDirectory)
+                .build();
+        String hash = fangerprinter.computeHash();
+        assertThat(cacheDirectory.list()).isNotEmpty();
+
+        //a new instance stands in for a restart
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withCacheDirectory(cacheDirectory)
+                .build();
+        String hash2 = fangerprinter2.computeHash();
+
+        assertThat(hash2).isEqualTo(hash);
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+    }
+
+    @Test
+    public void testJarClassSourceGeneratesSameHash() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .useJarClassSource(true)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+    }
+
+    @Test
+    public void testClasspathIndexGeneratesSameHash() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .useClasspathIndex(true)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+        assertThat(fangerprinter2.getFailedDependencies()).isEqualTo(fangerprinter.getFailedDependencies());
+    }
+
+    @Test
+    public void testArtifactIndexReplacesReadingClasses() throws Exception {
+        File classes = folder.newFolder("indexed");
+        copyClasses("com/stacktrace/yo/fangerprint/1", classes);
+        ArtifactIndex.write(classes, Hashing.md5(), false, false, false);
+        File jar = ArtifactIndexTest.writeJar(classes, new File(folder.getRoot(), "indexed.jar"));
+        ClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, getClass().getClassLoader());
+        Class rootClass = loadTestClass(loader);
+
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .ignoreJava(true)
+                .withStreamingHash(true)
+                .build();
+        List<FangerprintMetrics> received = new ArrayList<>();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .ignoreJava(true)
+                .useArtifactIndexes(true)
+                .withListener(received::add)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+        assertThat(received.get(0).getCacheHits()).isEqualTo(fangerprinter.getDependencies().size());
+        assertThat(received.get(0).getBytesRead()).isEqualTo(0);
+
+        //the index is kept between runs, and read again once the jar changed
+        fangerprinter2.computeHash();
+        assertThat(received.get(1).getCacheHits()).isEqualTo(fangerprinter.getDependencies().size());
+        Files.delete(new File(classes, ArtifactIndex.LOCATION).toPath());
+        //replaced rather than written over, the loader still has the jar open
+        File rewritten = ArtifactIndexTest.writeJar(classes, new File(folder.getRoot(), "rewritten.jar"));
+        Files.move(rewritten.toPath(), jar.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        assertThat(jar.setLastModified(jar.lastModified() + 10000)).isTrue();
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(received.get(2).getCacheHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void testJarClassSourceReusesCachedDigests() throws Exception {
+        File cacheDirectory = folder.newFolder("cache");
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withCacheDirectory(cacheDirectory)
+                .useJarClassSource(true)
+                .build();
+        String hash = fangerprinter.computeHash();
+
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withCacheDirectory(cacheDirectory)
+                .useJarClassSource(true)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(hash);
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+    }
+
+    @Test
+    public void testMappedClassSourceGeneratesSameHash() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .useMappedClassSource(true)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+    }
+
+    @Test
+    public void testResolvingFromResourcesExcludesSameClasses() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJarWithClass(Hasher.class)
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJarWithClass(Hasher.class)
+                .resolveCodeSourceFromResource(true)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter2.getExcludedClasses()).isEqualTo(fangerprinter.getExcludedClasses());
+
+        Fangerprinter fangerprinter3 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreClass(Hasher.class)
+                .resolveCodeSourceFromResource(true)
+                .build();
+        fangerprinter3.computeHash();
+
+        assertThat(fangerprinter3.getExcludedClasses()).containsExactly("com/google/common/hash/Hasher");
+    }
+
+    @Test
+    public void testResolvingFromResourcesDoesNotLoadClasses() throws Exception {
+        //a loader of its own so classes loaded by other tests do not count
+        List<URL> urls = new ArrayList<>();
+        for (String path : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(System.getProperty("java.class.path"))) {
+            urls.add(new File(path).toURI().toURL());
+        }
+        IsolatedClassLoader loader = new IsolatedClassLoader(urls.toArray(new URL[0]));
+        Class<?> fangerprinterClass = loader.loadClass(Fangerprinter.class.getName());
+        Object hashFunction = loader.loadClass(Hashing.class.getName()).getMethod("md5").invoke(null);
+
+        Object builder = fangerprinterClass.getMethod("newBuilder", Class.class).invoke(null, fangerprinterClass);
+        builder.getClass().getMethod("withHashType", loader.loadClass(HashFunction.class.getName())).invoke(builder, hashFunction);
+        builder.getClass().getMethod("resolveCodeSourceFromResource", boolean.class).invoke(builder, true);
+        Object fangerprinter = builder.getClass().getMethod("build").invoke(builder);
+        fangerprinterClass.getMethod("computeHash").invoke(fangerprinter);
+        Set<String> dependencies = (Set<String>) fangerprinterClass.getMethod("getDependencies").invoke(fangerprinter);
+
+        //only reachable through serialization, so it is never loaded by fingerprinting itself
+        String unusedClass = "com/google/common/collect/ImmutableMultimap$FieldSettersHolder";
+        assertThat(dependencies).contains(unusedClass);
+        assertThat(loader.isLoaded(unusedClass.replace('/', '.'))).isFalse();
+    }
+
+    @Test
+    public void testStreamingHashMatchesCachedHash() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withStreamingHash(true)
+                .build();
+        Fangerprinter fangerprinter3 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withCacheDirectory(folder.newFolder("cache"))
+                .build();
+        String hash = fangerprinter.computeHash();
+        String hash2 = fangerprinter2.computeHash();
+
+        assertThat(hash2).isNotEqualTo(hash);
+        assertThat(hash2).isEqualTo(fangerprinter2.computeHash());
+        assertThat(hash2).isEqualTo(fangerprinter3.computeHash());
+        assertThat(fangerprinter2.getDependencies()).isEqualTo(fangerprinter.getDependencies());
+    }
+
+    @Test
+    public void testStreamingHashChangesWithClassChanges() throws Exception {
+        Set<String> hashes = new TreeSet<>();
+        hashes.add(streamingHash(FIRST_TEST_CLASS, FIRST_TEST_CLASSLOADER));
+        hashes.add(streamingHash(SECOND_TEST_CLASS, SECOND_TEST_CLASSLOADER));
+        hashes.add(streamingHash(THIRD_TEST_CLASS, THIRD_TEST_CLASSLOADER));
+        hashes.add(streamingHash(FOURTH_TEST_CLASS, FOURTH_TEST_CLASSLOADER));
+        assertThat(hashes.size()).isEqualTo(4);
+
+        assertThat(streamingHash(FIFTH_TEST_CLASS, FIFTH_TEST_CLASSLOADER))
+                .isEqualTo(streamingHash(FIRST_TEST_CLASS, FIRST_TEST_CLASSLOADER));
+    }
+
+    @Test
+    public void testMerkleFingerprintDiffFindsChangedClasses() throws Exception {
+        MerkleFingerprint first = merkleFingerprint(FIRST_TEST_CLASS, FIRST_TEST_CLASSLOADER);
+        MerkleFingerprint second = merkleFingerprint(SECOND_TEST_CLASS, SECOND_TEST_CLASSLOADER);
+        MerkleFingerprint fifth = merkleFingerprint(FIFTH_TEST_CLASS, FIFTH_TEST_CLASSLOADER);
+
+        assertThat(second.getHash()).isNotEqualTo(first.getHash());
+        assertThat(second.diff(first).getChanged()).contains("TestClassToHash", "TestClassToHash$TestClass");
+        //the same classes from another directory
+        assertThat(fifth.getCodeSources()).contains("5");
+        assertThat(fifth.diff(first).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testStrippedDebugInfoHashIgnoresDebugFlags() throws Exception {
+        File withDebug = compileTestClass("com/stacktrace/yo/fangerprint/1", folder.newFolder("debug"), "-g");
+        File withoutDebug = compileTestClass("com/stacktrace/yo/fangerprint/1", folder.newFolder("no-debug"), "-g:none");
+        ClassLoader debugLoader = new URLClassLoader(new URL[]{withDebug.toURI().toURL()}, null);
+        ClassLoader noDebugLoader = new URLClassLoader(new URL[]{withoutDebug.toURI().toURL()}, null);
+
+        String debugHash = strippedHash(loadTestClass(debugLoader), debugLoader, false);
+        String noDebugHash = strippedHash(loadTestClass(noDebugLoader), noDebugLoader, false);
+        String strippedDebugHash = strippedHash(loadTestClass(debugLoader), debugLoader, true);
+        String strippedNoDebugHash = strippedHash(loadTestClass(noDebugLoader), noDebugLoader, true);
+
+        assertThat(noDebugHash).isNotEqualTo(debugHash);
+        assertThat(strippedDebugHash).isEqualTo(strippedNoDebugHash);
+        assertThat(strippedDebugHash).isNotEqualTo(debugHash);
+    }
+
+    @Test
+    public void testApiHashIgnoresMethodBodies() throws Exception {
+        ClassLoader first = new URLClassLoader(new URL[]{compileTestClass("com/stacktrace/yo/fangerprint/1",
+                folder.newFolder("first"), "-g").toURI().toURL()}, null);
+        ClassLoader bodyChanged = new URLClassLoader(new URL[]{compileTestClass("com/stacktrace/yo/fangerprint/6",
+                folder.newFolder("body"), "-g").toURI().toURL()}, null);
+        ClassLoader apiChanged = new URLClassLoader(new URL[]{compileTestClass("com/stacktrace/yo/fangerprint/4",
+                folder.newFolder("api"), "-g").toURI().toURL()}, null);
+
+        Fangerprinter fangerprinter = apiFangerprinter(loadTestClass(first), first);
+        String apiHash = fangerprinter.computeHash();
+        assertThat(apiFangerprinter(loadTestClass(bodyChanged), bodyChanged).computeHash()).isEqualTo(apiHash);
+        assertThat(apiFangerprinter(loadTestClass(apiChanged), apiChanged).computeHash()).isNotEqualTo(apiHash);
+        assertThat(Fangerprinter.newBuilder(loadTestClass(bodyChanged))
+                .withHashType(Hashing.md5())
+                .withClassLoader(bodyChanged)
+                .ignoreJava(true)
+                .build()
+                .computeHash())
+                .isNotEqualTo(Fangerprinter.newBuilder(loadTestClass(first))
+                        .withHashType(Hashing.md5())
+                        .withClassLoader(first)
+                        .ignoreJava(true)
+                        .build()
+                        .computeHash());
+        //public member classes are part of the api of the class they are in
+        assertThat(fangerprinter.getDependencies()).contains("TestClassToHash$TestAnnotationEnum");
+    }
+
+    private static Fangerprinter apiFangerprinter(Class rootClass, ClassLoader loader) {
+        return Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .ignoreJava(true)
+                .hashApiOnly(true)
+                .build();
+    }
+
+    private static String strippedHash(Class rootClass, ClassLoader loader, boolean stripDebug) {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .ignoreJava(true)
+                .stripDebugInfo(stripDebug)
+                .build();
+        String hash = fangerprinter.computeHash();
+        assertThat(fangerprinter.getDependencies()).hasSize(7);
+        return hash;
+    }
+
+    @Test
+    public void testIncrementalHashFollowsChangedClasses() throws Exception {
+        File classes = folder.newFolder("classes");
+        copyClasses("com/stacktrace/yo/fangerprint/1", classes);
+        ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, null);
+
+        try (Fangerprinter fangerprinter = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .incremental(true)
+                .build()) {
+            String hash = fangerprinter.computeHash();
+            assertThat(fangerprinter.computeHash()).isEqualTo(hash);
+
+            copyClasses("com/stacktrace/yo/fangerprint/2", classes);
+            String changedHash = hash;
+            //watch events arrive asynchronously
+            for (int i = 0; i < 100 && changedHash.equals(hash); i++) {
+                Thread.sleep(100);
+                changedHash = fangerprinter.computeHash();
+            }
+            String fullHash = Fangerprinter.newBuilder(FIRST_TEST_CLASS)
+                    .withHashType(Hashing.md5())
+                    .withClassLoader(loader)
+                    .build()
+                    .computeHash();
+            assertThat(changedHash).isNotEqualTo(hash);
+            assertThat(changedHash).isEqualTo(fullHash);
+        }
+    }
+
+    @Test
+    public void testBatchHashesMatchSingleRootHashes() throws Exception {
+        List<Class> roots = new ArrayList<>();
+        roots.add(Fangerprinter.class);
+        roots.add(MerkleFingerprint.class);
+        roots.add(ConstantPoolScanner.class);
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .build();
+        Map<Class, String> hashes = fangerprinter.computeHashes(roots);
+
+        assertThat(hashes.keySet()).containsExactlyElementsOf(roots);
+        for (Class root : roots) {
+            String hash = Fangerprinter.newBuilder(root)
+                    .withHashType(Hashing.md5())
+                    .ignoreJava(true)
+                    .build()
+                    .computeHash();
+            assertThat(hashes.get(root)).isEqualTo(hash);
+        }
+        assertThat(hashes.get(MerkleFingerprint.class)).isNotEqualTo(hashes.get(ConstantPoolScanner.class));
+    }
+
+    @Test
+    public void testConcurrentCallsOnOneInstance() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        String hash = fangerprinter.computeHash();
+        Set<String> dependencies = new HashSet<>(fangerprinter.getDependencies());
+        //a snapshot of the first run, the runs that finish later cannot change it nor be changed through it
+        Set<String> snapshot = fangerprinter.getDependencies();
+        assertThatThrownBy(snapshot::clear).isInstanceOf(UnsupportedOperationException.class);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> hashes = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                hashes.add(executor.submit(fangerprinter::computeHash));
+            }
+            for (Future<String> concurrentHash : hashes) {
+                assertThat(concurrentHash.get()).isEqualTo(hash);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(fangerprinter.getDependencies()).isEqualTo(dependencies);
+        assertThat(snapshot).isEqualTo(dependencies);
+    }
+
+    @Test
+    public void testDependencyGraphHoldsReferences() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .build();
+        Fangerprinter fangerprinter2 = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .recordDependencyGraph(true)
+                .build();
+
+        assertThat(fangerprinter2.computeHash()).isEqualTo(fangerprinter.computeHash());
+        assertThat(fangerprinter.getDependencyGraph()).isNull();
+        DependencyGraph graph = fangerprinter2.getDependencyGraph();
+        assertThat(graph.size()).isEqualTo(fangerprinter2.getDependencies().size());
+        assertThat(graph.getReferences("com/stacktrace/yo/fangerprint/Fangerprinter"))
+                .contains("com/stacktrace/yo/fangerprint/ClassFile", "com/google/common/hash/HashFunction");
+        assertThat(graph.getReferences("com/stacktrace/yo/fangerprint/ClassFile")).doesNotContain("java/net/URL");
+    }
+
+    @Test
+    public void testAffectedRootsMatchSingleRootClosures() throws Exception {
+        List<Class> roots = new ArrayList<>();
+        roots.add(MerkleFingerprint.class);
+        roots.add(ConstantPoolScanner.class);
+        roots.add(ExclusionMatcher.class);
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .recordDependencyGraph(true)
+                .build();
+        fangerprinter.computeHashes(roots);
+        DependencyGraph graph = fangerprinter.getDependencyGraph();
+
+        for (String changed : new String[]{"com/stacktrace/yo/fangerprint/FingerprintDiff", "org/objectweb/asm/ClassReader"}) {
+            DependencyGraph.Impact impact = graph.affectedBy(Collections.singleton(changed));
+            Set<String> expected = new TreeSet<>();
+            for (Class root : roots) {
+                Fangerprinter single = Fangerprinter.newBuilder(root)
+                        .withHashType(Hashing.md5())
+                        .ignoreJava(true)
+                        .build();
+                single.computeHash();
+                if (single.getDependencies().contains(changed)) {
+                    expected.add(root.getName().replace('.', '/'));
+                }
+            }
+            assertThat(impact.getRoots()).isNotEmpty();
+            assertThat(impact.getRoots()).isEqualTo(expected);
+            assertThat(impact.getClasses()).contains(changed);
+        }
+        assertThat(graph.affectedBy(Collections.singleton("com/example/Missing")).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testWrittenDependencyGraphMapsBack() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .recordDependencyGraph(true)
+                .build();
+        fangerprinter.computeHash();
+        DependencyGraph graph = fangerprinter.getDependencyGraph();
+        File file = new File(folder.getRoot(), "dependencies.graph");
+        fangerprinter.writeDependencyGraph(file);
+
+        DependencyGraph mapped = DependencyGraph.map(file);
+        assertThat(mapped.size()).isEqualTo(graph.size());
+        assertThat(mapped.getRoots()).isEqualTo(graph.getRoots());
+        String changed = "org/objectweb/asm/ClassReader";
+        assertThat(mapped.getReferrers(changed)).isEqualTo(graph.getReferrers(changed));
+        assertThat(mapped.affectedBy(Collections.singleton(changed)).getClasses())
+                .isEqualTo(graph.affectedBy(Collections.singleton(changed)).getClasses());
+        byte[] classBytes = ByteStreams.toByteArray(Fangerprinter.class.getResourceAsStream("Fangerprinter.class"));
+        assertThat(mapped.getDigest(mapped.idOf("com/stacktrace/yo/fangerprint/Fangerprinter")))
+                .isEqualTo(Hashing.md5().hashBytes(classBytes).asBytes());
+    }
+
+    @Test
+    public void testAsyncHashMatchesHash() throws Exception {
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .build();
+        String hash = fangerprinter.computeHash();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertThat(fangerprinter.computeHashAsync(executor).get(1, TimeUnit.MINUTES)).isEqualTo(hash);
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(fangerprinter.computeHashAsync().get(1, TimeUnit.MINUTES)).isEqualTo(hash);
+
+        //an executor that rejects the computation leaves it to the calling thread
+        CompletableFuture<String> rejected = fangerprinter.computeHashAsync(runnable -> {
+            throw new RejectedExecutionException();
+        });
+        assertThat(rejected.isDone()).isTrue();
+        assertThat(rejected.get()).isEqualTo(hash);
+    }
+
+    @Test
+    public void testCancellingAsyncHashStopsTraversal() throws Exception {
+        File classes = compileTestClass("com/stacktrace/yo/fangerprint/1", folder.newFolder("cancelled"), "-g");
+        CountDownLatch examining = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        AtomicBoolean armed = new AtomicBoolean(false);
+        //holds the traversal on the first class it looks up until the future is cancelled
+        ClassLoader loader = new URLClassLoader(new URL[]{classes.toURI().toURL()}, null) {
+            @Override
+            public URL getResource(String name) {
+                if (armed.compareAndSet(true, false)) {
+                    examining.countDown();
+                    Uninterruptibles.awaitUninterruptibly(cancelled);
+                }
+                return super.getResource(name);
+            }
+        };
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(loadTestClass(loader))
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .withBackgroundRateLimit(20)
+                .build();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            armed.set(true);
+            CompletableFuture<String> future = fangerprinter.computeHashAsync(executor);
+            assertThat(examining.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(future.cancel(true)).isTrue();
+            cancelled.countDown();
+
+            //the executor is free again long before the hundreds of classes left could have been examined
+            executor.submit(() -> null).get(5, TimeUnit.SECONDS);
+            assertThat(future.isCancelled()).isTrue();
+        } finally {
+            cancelled.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testListenerReceivesMetrics() throws Exception {
+        List<FangerprintMetrics> received = new ArrayList<>();
+        Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .ignoreJava(true)
+                .withListener(received::add)
+                .build();
+        fangerprinter.computeHash();
+
+        assertThat(received).hasSize(1);
+        FangerprintMetrics metrics = received.get(0);
+        assertThat(metrics.getRootClasses()).containsExactly(Fangerprinter.class.getName());
+        assertThat(metrics.getDependencyCount()).isEqualTo(fangerprinter.getDependencies().size());
+        assertThat(metrics.getExcludedCount()).isGreaterThan(0);
+        assertThat(metrics.getFailedCount()).isEqualTo(fangerprinter.getFailedDependencies().size());
+        assertThat(metrics.getBytesRead()).isGreaterThan(0);
+        assertThat(metrics.getBytesHashed()).isEqualTo(metrics.getBytesRead());
+        assertThat(metrics.getClassesByCodeSource().values().stream().mapToLong(Long::longValue).sum())
+                .isEqualTo(metrics.getDependencyCount());
+        assertThat(metrics.getTotalTime(TimeUnit.NANOSECONDS))
+                .isGreaterThanOrEqualTo(metrics.getParseTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Test
+    public void testStatisticsMBean() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.stacktrace.yo.fangerprint:type=Fangerprinter,name=\"statistics test\"");
+        try (Fangerprinter fangerprinter = Fangerprinter.newBuilder(Fangerprinter.class)
+                .withHashType(Hashing.md5())
+                .withMBean("statistics test")
+                .build()) {
+            fangerprinter.computeHash();
+            fangerprinter.computeHash();
+
+            assertThat(server.getAttribute(name, "FingerprintCount")).isEqualTo(2L);
+            assertThat(server.getAttribute(name, "LastDependencyCount")).isEqualTo(fangerprinter.getDependencies().size());
+        }
+        assertThat(server.isRegistered(name)).isFalse();
     }
 
     //Utility Methods
+    private static String streamingHash(Class rootClass, ClassLoader loader) {
+        return Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .withStreamingHash(true)
+                .build()
+                .computeHash();
+    }
+
+    private static MerkleFingerprint merkleFingerprint(Class rootClass, ClassLoader loader) {
+        return Fangerprinter.newBuilder(rootClass)
+                .withHashType(Hashing.md5())
+                .withClassLoader(loader)
+                .build()
+                .computeMerkleFingerprint();
+    }
+
+    private static void copyClasses(String directory, File target) throws Exception {
+        File[] classFiles = new File(FangerprinterTest.class.getClassLoader().getResource(directory).getPath())
+                .listFiles((dir, name) -> name.endsWith(".class"));
+        for (File classFile : classFiles) {
+            Files.copy(classFile.toPath(), new File(target, classFile.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     private static void compileFirstTestClass() throws Exception {
 
         compileTestClass("com/stacktrace/yo/fangerprint/1/TestClassToHash.java");
@@ -328,6 +1101,14 @@ public class FangerprinterTest {
         compileClassFromResource(FangerprinterTest.class.getClassLoader().getResource(directory).getPath());
     }
 
+    //Compiles the class of a directory into another one, with the given debug option
+    static File compileTestClass(String directory, File destination, String debugOption) throws Exception {
+        String source = new File(FangerprinterTest.class.getClassLoader().getResource(directory).getPath(),
+                "TestClassToHash.java").getPath();
+        ToolProvider.getSystemJavaCompiler().run(null, null, null, debugOption, "-d", destination.getPath(), source);
+        return destination;
+    }
+
     //Returns a new StubClassLoader withthe given root directory
     static ClassLoader getClassLoader(String directory) throws Exception {
         List<URL> urls = new ArrayList();
@@ -354,6 +1135,16 @@ public class FangerprinterTest {
         compiler.run(null, null, null, javaFile.getPath());
     }
 
+    private static final class IsolatedClassLoader extends URLClassLoader {
+        public IsolatedClassLoader(URL[] urls) {
+            super(urls, null);
+        }
+
+        public boolean isLoaded(String name) {
+            return findLoadedClass(name) != null;
+        }
+    }
+
     private static final class StubClassLoader extends URLClassLoader {
         public StubClassLoader(URL[] urls, ClassLoader parent) {
             super(urls, parent);
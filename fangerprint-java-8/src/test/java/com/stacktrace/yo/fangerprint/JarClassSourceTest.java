@@ -0,0 +1,75 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class JarClassSourceTest {
+
+    private static final byte[] CLASS_BYTES = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsEntryFromJar() throws Exception {
+        File jar = writeJar("first.jar", CLASS_BYTES);
+
+        try (ClassSource source = newSource(jar)) {
+            ClassFile classFile = source.find("com/example/Foo");
+
+            assertThat(classFile.getCodeSource()).isEqualTo(jar.getPath());
+            assertThat(classFile.read()).isEqualTo(CLASS_BYTES);
+            assertThat(source.find("com/example/Missing")).isNull();
+        }
+    }
+
+    @Test
+    public void testStampFollowsEntryNotJar() throws Exception {
+        File jar = writeJar("first.jar", CLASS_BYTES);
+        long[] stamp;
+        try (ClassSource source = newSource(jar)) {
+            stamp = source.find("com/example/Foo").getStamp();
+        }
+
+        //a rebuilt jar with the same class keeps the stamp
+        writeJar("first.jar", CLASS_BYTES);
+        jar.setLastModified(jar.lastModified() + 60000);
+        try (ClassSource source = newSource(jar)) {
+            assertThat(source.find("com/example/Foo").getStamp()).isEqualTo(stamp);
+        }
+
+        byte[] changed = CLASS_BYTES.clone();
+        changed[7] = 51;
+        writeJar("first.jar", changed);
+        try (ClassSource source = newSource(jar)) {
+            assertThat(source.find("com/example/Foo").getStamp()).isNotEqualTo(stamp);
+        }
+    }
+
+    private ClassSource newSource(File jar) throws Exception {
+        ClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+        return new JarClassSource(new LoaderClassSource(getClass().getClassLoader(), ImmutableList.of(loader)));
+    }
+
+    private File writeJar(String name, byte[] classBytes) throws Exception {
+        File jar = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry("com/example/Foo.class"));
+            out.write(classBytes);
+            out.closeEntry();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,129 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class MappedClassSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsStoredAndDeflatedEntries() throws Exception {
+        byte[] stored = classBytes(64);
+        byte[] deflated = classBytes(4096);
+        File jar = new File(folder.getRoot(), "mapped.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            ZipEntry storedEntry = new ZipEntry("com/example/Stored.class");
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setCrc(crc.getValue());
+            out.putNextEntry(storedEntry);
+            out.write(stored);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("com/example/Deflated.class"));
+            out.write(deflated);
+            out.closeEntry();
+            out.putNextEntry(new ZipEntry("META-INF/notes.txt"));
+            out.write(new byte[]{1});
+            out.closeEntry();
+        }
+        ClassLoader loader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+
+        try (ClassSource mapped = new MappedClassSource(newLoaderSource(loader));
+             ClassSource zipped = new JarClassSource(newLoaderSource(loader))) {
+            assertThat(mapped.find("com/example/Stored").read()).isEqualTo(stored);
+            assertThat(mapped.find("com/example/Deflated").read()).isEqualTo(deflated);
+            assertThat(mapped.find("com/example/Deflated").getCodeSource()).isEqualTo(jar.getPath());
+            //both jar sources stamp entries the same way so they share cache entries
+            assertThat(mapped.find("com/example/Deflated").getStamp())
+                    .isEqualTo(zipped.find("com/example/Deflated").getStamp());
+            assertThat(mapped.find("com/example/Missing")).isNull();
+        }
+    }
+
+    @Test
+    public void testUnsupportedEntriesAreReadThroughTheWrappedSource() throws Exception {
+        byte[] stored = classBytes(64);
+        File jar = new File(folder.getRoot(), "bzip2.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            ZipEntry entry = new ZipEntry("com/example/Compressed.class");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(stored);
+            out.closeEntry();
+        }
+        //marks the entry as bzip2 compressed in its local header and in the central directory
+        byte[] bytes = Files.readAllBytes(jar.toPath());
+        bytes[8] = 12;
+        for (int i = 0; i < bytes.length - 4; i++) {
+            if (bytes[i] == 'P' && bytes[i + 1] == 'K' && bytes[i + 2] == 1 && bytes[i + 3] == 2) {
+                bytes[i + 10] = 12;
+            }
+        }
+        Files.write(jar.toPath(), bytes);
+        URL location = new URL("jar:" + jar.toURI().toURL() + "!/com/example/Compressed.class");
+        ClassFile wrapped = new ClassFile("com/example/Compressed", location) {
+            @Override
+            String getCodeSource() {
+                return jar.getPath();
+            }
+
+            @Override
+            long[] getStamp() {
+                return null;
+            }
+
+            @Override
+            byte[] read() {
+                return stored;
+            }
+        };
+
+        try (ClassSource mapped = new MappedClassSource(new ClassSource() {
+            @Override
+            public ClassFile find(String internalName) {
+                return wrapped;
+            }
+
+            @Override
+            public void close() {
+            }
+        })) {
+            assertThat(mapped.find("com/example/Compressed")).isSameAs(wrapped);
+        }
+    }
+
+    private static ClassSource newLoaderSource(ClassLoader loader) {
+        return new LoaderClassSource(MappedClassSourceTest.class.getClassLoader(), ImmutableList.of(loader));
+    }
+
+    private static byte[] classBytes(int size) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) 7);
+        bytes[0] = (byte) 0xCA;
+        bytes[1] = (byte) 0xFE;
+        return bytes;
+    }
+}
@@ -0,0 +1,71 @@
+package com.stacktrace.yo.fangerprint;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MerkleFingerprintTest {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.md5();
+
+    @Test
+    public void testSameClassesHaveSameHash() throws Exception {
+        Map<String, HashCode> classes = ImmutableMap.of(
+                "a/One", digest("one"),
+                "a/b/Two", digest("two"));
+        MerkleFingerprint fingerprint = MerkleFingerprint.build(HASH_FUNCTION, classes, name -> "lib.jar");
+        MerkleFingerprint fingerprint2 = MerkleFingerprint.build(HASH_FUNCTION, classes, name -> "lib.jar");
+
+        assertThat(fingerprint.getHash()).isEqualTo(fingerprint2.getHash());
+        assertThat(fingerprint.getCodeSources()).containsExactly("lib.jar");
+        assertThat(fingerprint.getPackageHashes("lib.jar")).containsOnlyKeys("a", "a/b");
+        assertThat(fingerprint.diff(fingerprint2).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testDiffFindsAddedRemovedAndChangedClasses() throws Exception {
+        MerkleFingerprint previous = MerkleFingerprint.build(HASH_FUNCTION, ImmutableMap.of(
+                "a/One", digest("one"),
+                "a/Two", digest("two"),
+                "b/Three", digest("three"),
+                "c/Four", digest("four")),
+                name -> name.startsWith("c/") ? "other.jar" : "lib.jar");
+        MerkleFingerprint current = MerkleFingerprint.build(HASH_FUNCTION, ImmutableMap.of(
+                "a/One", digest("one"),
+                "a/Two", digest("two changed"),
+                "c/Four", digest("four"),
+                "d/Five", digest("five")),
+                name -> "lib.jar");
+
+        FingerprintDiff diff = current.diff(previous);
+        assertThat(current.getHash()).isNotEqualTo(previous.getHash());
+        assertThat(diff.getAdded()).containsExactly("d/Five");
+        assertThat(diff.getRemoved()).containsExactly("b/Three");
+        //c/Four only moved to another jar
+        assertThat(diff.getChanged()).containsExactly("a/Two");
+    }
+
+    @Test
+    public void testMovedClassThatChangedIsReportedAsChanged() throws Exception {
+        MerkleFingerprint previous = MerkleFingerprint.build(HASH_FUNCTION,
+                ImmutableMap.of("a/One", digest("one"), "a/Two", digest("two")), name -> "old.jar");
+        MerkleFingerprint current = MerkleFingerprint.build(HASH_FUNCTION,
+                ImmutableMap.of("a/One", digest("one changed"), "a/Two", digest("two")), name -> "new.jar");
+
+        FingerprintDiff diff = current.diff(previous);
+        assertThat(diff.getAdded()).isEmpty();
+        assertThat(diff.getRemoved()).isEmpty();
+        assertThat(diff.getChanged()).containsExactly("a/One");
+    }
+
+    private static HashCode digest(String content) {
+        return HASH_FUNCTION.hashString(content, StandardCharsets.UTF_8);
+    }
+}
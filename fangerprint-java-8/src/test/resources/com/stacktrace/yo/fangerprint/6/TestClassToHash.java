@@ -0,0 +1,56 @@
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestClassToHash {
+
+    public static class TestClass implements TestIface {
+        @TestAnnotation(TestAnnotationEnum.VALUE)
+        public int field;
+        public final List<String> list;
+
+        public TestClass() {
+            // Non-signature dependency
+            list = newList();
+        }
+
+        //changes the body only
+        private static List<String> newList() {
+            List<String> list = new ArrayList<String>();
+            list.add("value");
+            return list;
+        }
+
+        @Override
+        public TestEnum enumValue() {
+            return TestEnum.VALUE;
+        }
+    }
+
+    public static enum TestEnum {
+        VALUE
+    }
+
+    public static enum TestAnnotationEnum {
+        VALUE
+    }
+
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target({ ElementType.FIELD })
+    public @interface TestAnnotation {
+        TestAnnotationEnum value();
+    }
+
+    public static class TestDependency {
+        public int field;
+    }
+
+    public static interface TestIface {
+        public TestEnum enumValue();
+    }
+
+}
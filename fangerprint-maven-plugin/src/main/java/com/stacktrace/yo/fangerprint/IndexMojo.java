@@ -0,0 +1,60 @@
+package com.stacktrace.yo.fangerprint;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the digest and references of every class of the project into {@value ArtifactIndex#LOCATION}, before the
+ * classes are packaged, for fangerprinters built with
+ * {@link Fangerprinter.FangerprintBuilder#useArtifactIndexes(boolean)}.
+ */
+@Mojo(name = "index", defaultPhase = LifecyclePhase.PREPARE_PACKAGE, threadSafe = true)
+public class IndexMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project.build.outputDirectory}", readonly = true)
+    private File classesDirectory;
+
+    //md5, sha1, sha256 or sha512, the one of the fangerprinters reading the index
+    @Parameter(property = "fangerprint.hash", defaultValue = "md5")
+    private String hash;
+
+    //the scan mode of the fangerprinters reading the index
+    @Parameter(property = "fangerprint.scanConstantPool", defaultValue = "false")
+    private boolean scanConstantPool;
+
+    //whether the fangerprinters reading the index strip debug information
+    @Parameter(property = "fangerprint.stripDebug", defaultValue = "false")
+    private boolean stripDebug;
+
+    //whether the fangerprinters reading the index hash only the api of classes
+    @Parameter(property = "fangerprint.apiOnly", defaultValue = "false")
+    private boolean apiOnly;
+
+    @Parameter(property = "fangerprint.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip) {
+            getLog().info("Skipping the fangerprint index");
+            return;
+        }
+        if (!classesDirectory.isDirectory()) {
+            getLog().info("No classes to index in " + classesDirectory);
+            return;
+        }
+        try {
+            int count = ArtifactIndex.write(classesDirectory, HashFunctions.forName(hash), scanConstantPool,
+                    stripDebug, apiOnly);
+            getLog().info("Indexed " + count + " classes into " + new File(classesDirectory, ArtifactIndex.LOCATION));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new MojoExecutionException("Unable to write the fangerprint index of " + classesDirectory, e);
+        }
+    }
+}